@@ -2,8 +2,18 @@ package cn.wuxia.common.hibernate;
 
 import java.sql.Types;
 
+/**
+ * MySQL dialect，MySQL 8.0及以上使用{@link EnhancementMySQL8Dialect}，分页查询可在同一条语句中返回总数。
+ *
+ * @author songlin.li
+ */
 public class EnhancementDialect extends org.hibernate.dialect.MySQLDialect {
 
+    /**
+     * hql中的 count(*) over() 函数名，{@link EnhancementMySQL8Dialect}中注册
+     */
+    public static final String COUNT_OVER_FUNCTION = "count_over";
+
     public EnhancementDialect() {
         super();
         registerColumnType(Types.NULL, "null");
@@ -0,0 +1,23 @@
+package cn.wuxia.common.hibernate;
+
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.sql.Types;
+
+/**
+ * MySQL 8 dialect，增加窗口函数支持：hql中可使用 count_over() 得到 count(*) over()，
+ * 分页查询时在同一条语句中返回当前页数据及总数。MySQL 5.x请使用{@link EnhancementDialect}，分页时执行独立的count查询。
+ *
+ * @author songlin.li
+ */
+public class EnhancementMySQL8Dialect extends org.hibernate.dialect.MySQL8Dialect {
+
+    public EnhancementMySQL8Dialect() {
+        super();
+        registerColumnType(Types.NULL, "null");
+        registerHibernateType(Types.NULL, "null");
+        registerFunction(EnhancementDialect.COUNT_OVER_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.LONG, "count(*) over()"));
+    }
+
+}
@@ -0,0 +1,250 @@
+package cn.wuxia.common.hibernate;
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * keyset(seek)分页的游标，配合{@link cn.wuxia.common.orm.query.Pages}使用。
+ * 游标由上一页最后一行的排序字段值及id组成，下一页以 (sortKey, id) > (?, ?) 条件查询，
+ * 避免深分页时的offset扫描。第一页不设置after，查询后通过{@link #getNext()}获取下一页的游标。
+ * 排序字段的值不能为null。
+ *
+ * @author songlin
+ */
+public class Keyset implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final byte STRING = 1, LONG = 2, INTEGER = 3, SHORT = 4, BYTE = 5, DOUBLE = 6, FLOAT = 7, BIG_DECIMAL = 8,
+            BIG_INTEGER = 9, BOOLEAN = 10, DATE = 11, TIMESTAMP = 12, SQL_DATE = 13, LOCAL_DATE = 14, LOCAL_DATE_TIME = 15,
+            INSTANT = 16, UUID_VALUE = 17;
+
+    /**
+     * id属性，为空时使用实体的id属性名；hql/sql查询可指定带别名的属性，如 u.id
+     */
+    private String idProperty;
+
+    /**
+     * 上一页最后一行的游标，为空时查询第一页
+     */
+    private String after;
+
+    /**
+     * 当前页最后一行的游标，为空时表示没有下一页
+     */
+    private String next;
+
+    public Keyset() {
+    }
+
+    public Keyset(String after) {
+        this.after = after;
+    }
+
+    public static Keyset first() {
+        return new Keyset();
+    }
+
+    public static Keyset after(String token) {
+        return new Keyset(token);
+    }
+
+    public String getIdProperty() {
+        return idProperty;
+    }
+
+    public Keyset setIdProperty(String idProperty) {
+        this.idProperty = idProperty;
+        return this;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * 将排序字段值编码为游标，只支持常用的基本类型、日期及UUID，不使用java序列化，可安全地交给客户端
+     *
+     * @param values
+     * @return
+     */
+    public static String encode(Object... values) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(values.length);
+            for (Object value : values) {
+                write(out, value);
+            }
+            out.flush();
+            return Base64.encodeBase64URLSafeString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("unable to encode keyset", e);
+        }
+    }
+
+    /**
+     * 解析游标，游标来自客户端，格式错误（包括截断、多余的字节、非法的数值及日期）时统一抛出IllegalArgumentException
+     *
+     * @param token
+     * @return 排序字段值
+     * @see #encode(Object...)
+     */
+    public static Object[] decode(String token) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decodeBase64(token)));
+            Object[] values = new Object[in.readShort()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = read(in);
+            }
+            if (in.available() > 0) {
+                throw new IOException("unexpected bytes after keyset values");
+            }
+            return values;
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("invalid keyset token: " + token, e);
+        }
+    }
+
+    /**
+     * @param token
+     * @param size  排序字段数（包括id）
+     * @return 排序字段值
+     * @see #decode(String)
+     */
+    public static Object[] decode(String token, int size) {
+        Object[] values = decode(token);
+        if (values.length != size) {
+            throw new IllegalArgumentException("keyset token does not match the sort: " + token);
+        }
+        return values;
+    }
+
+    private static void write(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof java.sql.Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((java.sql.Timestamp) value).getTime());
+            out.writeInt(((java.sql.Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof LocalDate) {
+            out.writeByte(LOCAL_DATE);
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(LOCAL_DATE_TIME);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Instant) {
+            out.writeByte(INSTANT);
+            out.writeLong(((Instant) value).getEpochSecond());
+            out.writeInt(((Instant) value).getNano());
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else {
+            throw new IllegalArgumentException("unsupported keyset value: " + value);
+        }
+    }
+
+    private static Object read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case STRING:
+                return in.readUTF();
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case BIG_INTEGER:
+                return new BigInteger(in.readUTF());
+            case BOOLEAN:
+                return in.readBoolean();
+            case DATE:
+                return new Date(in.readLong());
+            case TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case LOCAL_DATE:
+                return LocalDate.ofEpochDay(in.readLong());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(in.readUTF());
+            case INSTANT:
+                return Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case UUID_VALUE:
+                return new UUID(in.readLong(), in.readLong());
+            default:
+                throw new IOException("unknown keyset value type: " + type);
+        }
+    }
+}
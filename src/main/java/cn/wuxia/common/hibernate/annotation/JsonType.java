@@ -1,31 +1,77 @@
 package cn.wuxia.common.hibernate.annotation;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.lang.reflect.Modifier;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.hibernate.HibernateException;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.internal.util.ReflectHelper;
-import org.hibernate.usertype.ParameterizedType;
+import org.hibernate.usertype.DynamicParameterizedType;
 import org.hibernate.usertype.UserType;
+import org.springframework.util.Assert;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.base.Objects;
+import com.google.common.io.CountingInputStream;
 
 /**
 * Hibernate {@link UserType} implementation to handle JSON objects
+* <p>
+* deepCopy在加载、merge及读取二级缓存时都会调用：不可变类型（String、数值、枚举、java.time、record等）直接返回原对象，
+* 通过{@link #registerCopier(Class, UnaryOperator)}注册了拷贝方法的类型使用注册的方法，
+* 其他类型通过{@link TokenBuffer}复制，不再生成及解析json字符串。
+* 脏检查时值对象重写了equals则使用equals，否则比较两者序列化后的内容。
+* <p>
+* 读写使用按classType创建的{@link ObjectReader}/{@link ObjectWriter}（classType不是final时writer按值的实际类型序列化），
+* 读取时直接解析结果集的字符流/字节流，写入时序列化到缓冲区后以流的方式交给jdbc驱动，不再生成中间的String/byte[]。
+* <p>
+* BLOB字段可以通过format参数（json、smile、cbor）指定二进制编码，smile/cbor需要引入jackson-dataformat-smile/cbor。
+* 读取时按内容自动识别编码，修改format后已有的数据仍可读取，写入时才转换为新的编码。
+* <p>
+* BLOB字段可以通过compress参数（deflate或{@link Codec}的实现类）压缩超过compressThreshold字节（默认4096）的值，
+* 压缩后的数据以codec的头部字节开头，读取时自动识别，未压缩的旧数据照常读取。
+* 每个字段的压缩率、耗时及读写的字节数见{@link #getCompressionStats()}。
+* <p>
+* lazy=true时属性类型为{@link LazyJson}，加载时只保存原始内容，第一次访问时才解析，未访问的值原样写回。
 * @author songlin.li 2015-04-21
 * @see https
 *      ://docs.jboss.org/hibernate/orm/4.1/javadocs/org/hibernate/usertype/
 *      UserType.html
 */
-public class JsonType implements UserType, ParameterizedType, Serializable {
+public class JsonType implements UserType, DynamicParameterizedType, Serializable {
 
     private static final long serialVersionUID = 1L;
 
@@ -35,12 +81,101 @@ public class JsonType implements UserType, ParameterizedType, Serializable {
 
     private static final String TYPE = "type";
 
+    private static final String FORMAT = "format";
+
+    private static final String COMPRESS = "compress";
+
+    private static final String COMPRESS_THRESHOLD = "compressThreshold";
+
+    private static final String LAZY = "lazy";
+
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 4096;
+
+    /**
+     * 按头部字节注册的压缩方式
+     */
+    private static final Map<Byte, Codec> CODECS = new ConcurrentHashMap<>();
+
+    /**
+     * 按字段（实体类名.属性名）统计的压缩情况
+     */
+    private static final Map<String, CompressionStats> COMPRESSION_STATS = new ConcurrentHashMap<>();
+
+    static {
+        registerCodec(new DeflateCodec());
+    }
+
     private static final int[] SQL_TYPES = new int[] { Types.LONGVARCHAR, Types.CLOB, Types.BLOB };
 
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(String.class, Boolean.class, Character.class, Byte.class,
+            Short.class, Integer.class, Long.class, Float.class, Double.class, java.math.BigDecimal.class, java.math.BigInteger.class,
+            UUID.class, java.util.Locale.class, java.util.Currency.class));
+
+    private static final Map<Class<?>, UnaryOperator<?>> COPIERS = new ConcurrentHashMap<>();
+
+    /**
+     * 值对象的类是否重写了equals
+     */
+    private static final ClassValue<Boolean> VALUE_EQUALS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
     private Class<?> classType;
 
     private int sqlType = Types.LONGVARCHAR; // before any guessing
 
+    private Format format = Format.JSON;
+
+    /**
+     * 压缩方式的头部字节，0表示不压缩
+     */
+    private byte codecHeader;
+
+    private int compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+
+    /**
+     * 字段名，用于压缩统计
+     */
+    private String column;
+
+    /**
+     * 是否延迟解析，属性类型为{@link LazyJson}
+     */
+    private boolean lazy;
+
+    private transient UnaryOperator<Object> copier;
+
+    /**
+     * 按{@link Format#ordinal()}缓存的reader
+     */
+    private transient ObjectReader[] readers;
+
+    private transient ObjectWriter writer;
+
+    /**
+     * 上一次写入的长度，作为下一次序列化缓冲区的初始大小
+     */
+    private transient int bufferSize;
+
+    /**
+     * 注册类型的深拷贝方法，代替默认的序列化再反序列化，需要在SessionFactory创建前注册
+     *
+     * @param type   json字段的classType
+     * @param copier 返回与原对象相互独立的拷贝
+     */
+    public static <T> void registerCopier(Class<T> type, UnaryOperator<T> copier) {
+        Assert.notNull(type, "type can not be null");
+        Assert.notNull(copier, "copier can not be null");
+        COPIERS.put(type, copier);
+    }
+
     @Override
     public void setParameterValues(Properties params) {
         String classTypeName = params.getProperty(CLASS_TYPE);
@@ -53,30 +188,191 @@ public class JsonType implements UserType, ParameterizedType, Serializable {
         if (type != null) {
             this.sqlType = Integer.decode(type).intValue();
         }
+        String format = params.getProperty(FORMAT);
+        if (format != null) {
+            try {
+                this.format = Format.valueOf(format.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new HibernateException("unknown format: " + format, e);
+            }
+            if (this.format != Format.JSON && this.sqlType != Types.BLOB) {
+                throw new HibernateException("format " + format + " requires type " + Types.BLOB + " (BLOB)");
+            }
+        }
+        String compress = params.getProperty(COMPRESS);
+        if (compress != null) {
+            if (this.sqlType != Types.BLOB) {
+                throw new HibernateException("compress requires type " + Types.BLOB + " (BLOB)");
+            }
+            this.codecHeader = codec(compress.trim()).header();
+            String threshold = params.getProperty(COMPRESS_THRESHOLD);
+            if (threshold != null) {
+                this.compressThreshold = Integer.parseInt(threshold.trim());
+            }
+            String entity = params.getProperty(ENTITY);
+            String property = params.getProperty(PROPERTY);
+            this.column = entity != null && property != null ? entity + "." + property : this.classType.getName();
+            compressionStats();
+        }
+        this.lazy = Boolean.parseBoolean(params.getProperty(LAZY));
+        if (this.lazy) {
+            Object returnedClass = params.get(RETURNED_CLASS);
+            String returnedClassName = returnedClass instanceof Class ? ((Class<?>) returnedClass).getName() : (String) returnedClass;
+            if (returnedClassName != null && !LazyJson.class.getName().equals(returnedClassName)) {
+                throw new HibernateException("lazy requires property type " + LazyJson.class.getName() + " but " + params.getProperty(ENTITY) + "."
+                        + params.getProperty(PROPERTY) + " is " + returnedClassName);
+            }
+        }
+        this.readers = null;
+        this.writer = writer();
+        reader(this.format);
+    }
+
+    /**
+     * 注册压缩方式，读取时按头部字节识别，需要在SessionFactory创建前注册
+     *
+     * @param codec
+     */
+    public static void registerCodec(Codec codec) {
+        Assert.notNull(codec, "codec can not be null");
+        byte header = codec.header();
+        Assert.isTrue(header >= Codec.MIN_HEADER && header <= Codec.MAX_HEADER, "codec header must be between 0x01 and 0x08: " + header);
+        Codec registered = CODECS.putIfAbsent(header, codec);
+        Assert.isTrue(registered == null || registered.getClass() == codec.getClass(),
+                "codec header " + header + " is already used by " + (registered == null ? null : registered.getClass().getName()));
+    }
+
+    /**
+     * @return 按字段（实体类名.属性名）统计的压缩情况，只包含配置了compress的字段
+     */
+    public static Map<String, CompressionStats> getCompressionStats() {
+        return Collections.unmodifiableMap(COMPRESSION_STATS);
+    }
 
+    private static Codec codec(String name) {
+        if (DeflateCodec.NAME.equalsIgnoreCase(name)) {
+            return CODECS.get(DeflateCodec.HEADER);
+        }
+        try {
+            Class<?> codecClass = ReflectHelper.classForName(name, JsonType.class);
+            for (Codec codec : CODECS.values()) {
+                if (codec.getClass() == codecClass) {
+                    return codec;
+                }
+            }
+            Codec codec = (Codec) codecClass.getDeclaredConstructor().newInstance();
+            registerCodec(codec);
+            return codec;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new HibernateException("unable to create codec: " + name, e);
+        }
+    }
+
+    private ObjectReader reader(Format format) {
+        ObjectReader[] readers = this.readers;
+        if (readers == null) {
+            readers = new ObjectReader[Format.values().length];
+            this.readers = readers;
+        }
+        ObjectReader reader = readers[format.ordinal()];
+        if (reader == null) {
+            reader = format.mapper().readerFor(this.classType);
+            readers[format.ordinal()] = reader;
+        }
+        return reader;
+    }
+
+    /**
+     * classType为final时按classType创建writer，否则按值的实际类型序列化，子类的属性不会丢失
+     */
+    private ObjectWriter writer() {
+        ObjectWriter writer = this.writer;
+        if (writer == null) {
+            ObjectMapper mapper = this.format.mapper();
+            writer = Modifier.isFinal(this.classType.getModifiers()) ? mapper.writerFor(this.classType) : mapper.writer();
+            this.writer = writer;
+        }
+        return writer;
     }
 
     @Override
     public Object assemble(Serializable cached, Object owner) throws HibernateException {
-        return this.deepCopy(cached);
+        if (cached == null) {
+            return null;
+        }
+        // disassemble的结果为json文本或未解析的原始内容
+        return this.lazy ? new LazyJson<>(this, cached) : parse(cached);
     }
 
     @Override
     public Object deepCopy(Object value) throws HibernateException {
-        Object copy = null;
-        if (value != null) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof LazyJson) {
+            LazyJson<?> lazyJson = (LazyJson<?>) value;
+            return lazyJson.isParsed() ? LazyJson.of(deepCopy(lazyJson.get())) : lazyJson.copy();
+        }
+        return copier().apply(value);
+    }
 
-            try {
-                return MAPPER.readValue(MAPPER.writeValueAsString(value), this.classType);
-            } catch (IOException e) {
-                throw new HibernateException("unable to deep copy object", e);
+    private UnaryOperator<Object> copier() {
+        UnaryOperator<Object> copier = this.copier;
+        if (copier == null) {
+            copier = resolveCopier(this.classType);
+            this.copier = copier;
+        }
+        return copier;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static UnaryOperator<Object> resolveCopier(final Class<?> type) {
+        UnaryOperator<Object> registered = (UnaryOperator<Object>) COPIERS.get(type);
+        if (registered != null) {
+            return registered;
+        }
+        if (isImmutable(type)) {
+            return UnaryOperator.identity();
+        }
+        return value -> tokenCopy(value, type);
+    }
+
+    /**
+     * 不可变的类型：基本类型的包装类、String、枚举、java.time下的类及record（record的组件应为不可变类型）
+     */
+    static boolean isImmutable(Class<?> type) {
+        if (type.isPrimitive() || type.isEnum() || IMMUTABLE_TYPES.contains(type)) {
+            return true;
+        }
+        if (type.getName().startsWith("java.time.")) {
+            return true;
+        }
+        return type.getSuperclass() != null && "java.lang.Record".equals(type.getSuperclass().getName());
+    }
+
+    /**
+     * 通过TokenBuffer复制，序列化的结果保存为token，不生成及解析json文本
+     */
+    private static Object tokenCopy(Object value, Class<?> type) {
+        try (TokenBuffer buffer = new TokenBuffer(MAPPER, false)) {
+            MAPPER.writeValue(buffer, value);
+            try (JsonParser parser = buffer.asParser()) {
+                return MAPPER.readValue(parser, type);
             }
+        } catch (IOException e) {
+            throw new HibernateException("unable to deep copy object", e);
         }
-        return copy;
     }
 
     @Override
     public Serializable disassemble(Object value) throws HibernateException {
+        if (value instanceof LazyJson) {
+            LazyJson<?> lazyJson = (LazyJson<?>) value;
+            if (!lazyJson.isParsed()) {
+                return (Serializable) lazyJson.getRaw();
+            }
+            value = lazyJson.get();
+        }
         try {
             return MAPPER.writeValueAsString(value);
         } catch (JsonProcessingException e) {
@@ -86,12 +382,50 @@ public class JsonType implements UserType, ParameterizedType, Serializable {
 
     @Override
     public boolean equals(Object x, Object y) throws HibernateException {
-        return Objects.equal(x, y);
+        if (x == y) {
+            return true;
+        }
+        if (x instanceof LazyJson && y instanceof LazyJson) {
+            LazyJson<?> a = (LazyJson<?>) x;
+            LazyJson<?> b = (LazyJson<?>) y;
+            if (!a.isParsed() && !b.isParsed() && java.util.Objects.deepEquals(a.getRaw(), b.getRaw())) {
+                // 都未访问过且原始内容相同，不需要解析
+                return true;
+            }
+        }
+        x = unwrap(x);
+        y = unwrap(y);
+        if (x == y) {
+            return true;
+        }
+        if (x == null || y == null) {
+            return false;
+        }
+        if (VALUE_EQUALS.get(x.getClass())) {
+            return x.equals(y);
+        }
+        return Arrays.equals(serialize(x), serialize(y));
     }
 
     @Override
     public int hashCode(Object x) throws HibernateException {
-        return Objects.hashCode(x);
+        x = unwrap(x);
+        if (x == null || VALUE_EQUALS.get(x.getClass())) {
+            return Objects.hashCode(x);
+        }
+        return Arrays.hashCode(serialize(x));
+    }
+
+    private static Object unwrap(Object value) {
+        return value instanceof LazyJson ? ((LazyJson<?>) value).get() : value;
+    }
+
+    private static byte[] serialize(Object value) {
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new HibernateException("unable to compare object", e);
+        }
     }
 
     @Override
@@ -106,7 +440,7 @@ public class JsonType implements UserType, ParameterizedType, Serializable {
 
     @Override
     public Class<?> returnedClass() {
-        return this.classType;
+        return this.lazy ? LazyJson.class : this.classType;
     }
 
     @Override
@@ -117,48 +451,427 @@ public class JsonType implements UserType, ParameterizedType, Serializable {
     @Override
     public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner)
             throws HibernateException, SQLException {
-        Object obj = null;
-        if (!rs.wasNull()) {
-            if (this.sqlType == Types.CLOB || this.sqlType == Types.BLOB) {
-                byte[] bytes = rs.getBytes(names[0]);
-                if (bytes != null) {
-                    try {
-                        obj = MAPPER.readValue(bytes, this.classType);
-                    } catch (IOException e) {
-                        throw new HibernateException("unable to read object from result set", e);
-                    }
-                }
-            } else {
-                try {
-                    obj = MAPPER.readValue(rs.getString(names[0]), this.classType);
-                } catch (IOException e) {
-                    throw new HibernateException("unable to read object from result set", e);
+        if (this.lazy) {
+            Object raw = this.sqlType == Types.BLOB ? rs.getBytes(names[0]) : rs.getString(names[0]);
+            return raw == null ? null : new LazyJson<>(this, raw);
+        }
+        try {
+            if (this.sqlType == Types.BLOB) {
+                InputStream input = rs.getBinaryStream(names[0]);
+                return input == null ? null : readBinary(input);
+            }
+            Reader input = rs.getCharacterStream(names[0]);
+            if (input == null) {
+                return null;
+            }
+            try (Reader in = input) {
+                return reader(Format.JSON).readValue(in);
+            }
+        } catch (IOException e) {
+            throw new HibernateException("unable to read object from result set", e);
+        }
+    }
+
+    /**
+     * 解析BLOB字段：识别压缩及编码后解析
+     */
+    private Object readBinary(InputStream input) throws IOException {
+        CompressionStats stats = compressionStats();
+        CountingInputStream counting = stats != null ? new CountingInputStream(input) : null;
+        long start = System.nanoTime();
+        try (InputStream source = input) {
+            PushbackInputStream head = new PushbackInputStream(counting != null ? counting : source, 1);
+            Codec codec = Codec.detect(head);
+            try (PushbackInputStream in = new PushbackInputStream(codec != null ? codec.decompress(head) : head, Format.HEADER_LENGTH)) {
+                Object value = reader(Format.detect(in)).readValue(in);
+                if (stats != null) {
+                    stats.read(counting.getCount(), System.nanoTime() - start, codec != null);
                 }
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 解析原始内容，用于{@link LazyJson}及二级缓存
+     *
+     * @param raw BLOB字段的byte[]或json文本
+     */
+    Object parse(Object raw) {
+        try {
+            if (raw instanceof byte[]) {
+                return readBinary(new ByteArrayInputStream((byte[]) raw));
             }
+            return reader(Format.JSON).readValue((String) raw);
+        } catch (IOException e) {
+            throw new HibernateException("unable to read object from raw value", e);
         }
-        return obj;
     }
 
     @Override
     public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
             throws HibernateException, SQLException {
+        if (value instanceof LazyJson) {
+            LazyJson<?> lazyJson = (LazyJson<?>) value;
+            Object raw = lazyJson.getRaw();
+            if (!lazyJson.isParsed() && raw != null && (raw instanceof byte[]) == (this.sqlType == Types.BLOB)) {
+                // 未访问过的值原样写回
+                if (raw instanceof byte[]) {
+                    st.setBytes(index, (byte[]) raw);
+                } else {
+                    st.setString(index, (String) raw);
+                }
+                return;
+            }
+            value = lazyJson.get();
+        }
         if (value == null) {
             st.setNull(index, this.sqlType);
-        } else {
-
-            if (this.sqlType == Types.CLOB || this.sqlType == Types.BLOB) {
-                try {
-                    st.setBytes(index, MAPPER.writeValueAsBytes(value));
-                } catch (JsonProcessingException e) {
-                    throw new HibernateException("unable to set object to result set", e);
+            return;
+        }
+        int initialSize = Math.max(this.bufferSize, 256);
+        try {
+            if (this.sqlType == Types.BLOB) {
+                ExposedByteArrayOutputStream out = new ExposedByteArrayOutputStream(initialSize);
+                writer().writeValue(out, value);
+                this.bufferSize = out.size();
+                if (this.codecHeader != 0) {
+                    out = compress(out);
                 }
+                st.setBinaryStream(index, out.toInputStream(), out.size());
             } else {
-                try {
-                    st.setString(index, MAPPER.writeValueAsString(value));
-                } catch (JsonProcessingException e) {
-                    throw new HibernateException("unable to set object to result set", e);
+                ExposedCharArrayWriter out = new ExposedCharArrayWriter(initialSize);
+                writer().writeValue(out, value);
+                this.bufferSize = out.size();
+                st.setCharacterStream(index, out.toReader(), out.size());
+            }
+        } catch (IOException e) {
+            throw new HibernateException("unable to set object to result set", e);
+        }
+    }
+
+    private CompressionStats compressionStats() {
+        return this.column == null ? null : COMPRESSION_STATS.computeIfAbsent(this.column, CompressionStats::new);
+    }
+
+    /**
+     * 超过阈值时压缩，压缩后没有变小时保存原数据
+     */
+    private ExposedByteArrayOutputStream compress(ExposedByteArrayOutputStream raw) throws IOException {
+        CompressionStats stats = compressionStats();
+        if (raw.size() < this.compressThreshold) {
+            stats.written(raw.size(), raw.size(), 0, false);
+            return raw;
+        }
+        long start = System.nanoTime();
+        Codec codec = CODECS.get(this.codecHeader);
+        ExposedByteArrayOutputStream compressed = new ExposedByteArrayOutputStream(Math.max(raw.size() / 4, 256));
+        compressed.write(codec.header());
+        try (OutputStream out = codec.compress(compressed)) {
+            raw.writeTo(out);
+        }
+        long nanos = System.nanoTime() - start;
+        if (compressed.size() >= raw.size()) {
+            stats.written(raw.size(), raw.size(), nanos, false);
+            return raw;
+        }
+        stats.written(raw.size(), compressed.size(), nanos, true);
+        return compressed;
+    }
+
+    /**
+     * 压缩方式。压缩后的数据以{@link #header()}开头，头部字节取值0x01-0x08，不会与文本json、smile及cbor的开头冲突
+     */
+    public interface Codec {
+
+        byte MIN_HEADER = 0x01;
+
+        byte MAX_HEADER = 0x08;
+
+        /**
+         * @return 写在压缩数据前的头部字节，不同的压缩方式不能相同
+         */
+        byte header();
+
+        /**
+         * @param out 压缩后数据的输出流
+         * @return 写入原数据的输出流，关闭时完成压缩
+         */
+        OutputStream compress(OutputStream out) throws IOException;
+
+        /**
+         * @param in 压缩数据（不含头部字节）
+         * @return 解压后的输入流
+         */
+        InputStream decompress(InputStream in) throws IOException;
+
+        /**
+         * 读取头部字节，不是压缩数据时放回
+         *
+         * @return 未压缩时返回null
+         */
+        static Codec detect(PushbackInputStream in) throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return null;
+            }
+            if (first < MIN_HEADER || first > MAX_HEADER) {
+                in.unread(first);
+                return null;
+            }
+            Codec codec = CODECS.get((byte) first);
+            if (codec == null) {
+                throw new HibernateException("unknown compression header: " + first);
+            }
+            return codec;
+        }
+    }
+
+    /**
+     * java.util.zip的deflate压缩
+     */
+    static final class DeflateCodec implements Codec {
+
+        static final String NAME = "deflate";
+
+        static final byte HEADER = 0x01;
+
+        @Override
+        public byte header() {
+            return HEADER;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return new DeflaterOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return new InflaterInputStream(in);
+        }
+    }
+
+    /**
+     * 一个字段的压缩统计
+     */
+    public static final class CompressionStats {
+
+        private final String column;
+
+        private final LongAdder writes = new LongAdder();
+
+        private final LongAdder compressedWrites = new LongAdder();
+
+        private final LongAdder rawBytes = new LongAdder();
+
+        private final LongAdder writtenBytes = new LongAdder();
+
+        private final LongAdder compressNanos = new LongAdder();
+
+        private final LongAdder reads = new LongAdder();
+
+        private final LongAdder compressedReads = new LongAdder();
+
+        private final LongAdder readBytes = new LongAdder();
+
+        private final LongAdder readNanos = new LongAdder();
+
+        CompressionStats(String column) {
+            this.column = column;
+        }
+
+        void written(long raw, long written, long nanos, boolean compressed) {
+            writes.increment();
+            rawBytes.add(raw);
+            writtenBytes.add(written);
+            compressNanos.add(nanos);
+            if (compressed) {
+                compressedWrites.increment();
+            }
+        }
+
+        void read(long bytes, long nanos, boolean compressed) {
+            reads.increment();
+            readBytes.add(bytes);
+            readNanos.add(nanos);
+            if (compressed) {
+                compressedReads.increment();
+            }
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public long getWrites() {
+            return writes.sum();
+        }
+
+        public long getCompressedWrites() {
+            return compressedWrites.sum();
+        }
+
+        /**
+         * @return 写入前序列化的字节数
+         */
+        public long getRawBytes() {
+            return rawBytes.sum();
+        }
+
+        /**
+         * @return 实际写入数据库的字节数
+         */
+        public long getWrittenBytes() {
+            return writtenBytes.sum();
+        }
+
+        /**
+         * @return 写入的字节数/序列化的字节数，没有写入时为1
+         */
+        public double getCompressionRatio() {
+            long raw = getRawBytes();
+            return raw == 0 ? 1 : (double) getWrittenBytes() / raw;
+        }
+
+        /**
+         * @return 压缩的总耗时（纳秒）
+         */
+        public long getCompressNanos() {
+            return compressNanos.sum();
+        }
+
+        public long getReads() {
+            return reads.sum();
+        }
+
+        public long getCompressedReads() {
+            return compressedReads.sum();
+        }
+
+        /**
+         * @return 从数据库读取的字节数
+         */
+        public long getReadBytes() {
+            return readBytes.sum();
+        }
+
+        /**
+         * @return 读取（解压及解析）的总耗时（纳秒）
+         */
+        public long getReadNanos() {
+            return readNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return column + "[writes=" + getWrites() + ", compressedWrites=" + getCompressedWrites() + ", rawBytes=" + getRawBytes()
+                    + ", writtenBytes=" + getWrittenBytes() + ", ratio=" + String.format("%.3f", getCompressionRatio()) + ", compressMs="
+                    + getCompressNanos() / 1000000 + ", reads=" + getReads() + ", compressedReads=" + getCompressedReads() + ", readBytes="
+                    + getReadBytes() + ", readMs=" + getReadNanos() / 1000000 + "]";
+        }
+    }
+
+    /**
+     * json字段的存储编码
+     */
+    public enum Format {
+        /**
+         * 文本json
+         */
+        JSON,
+        /**
+         * Smile，以":)\n"开头
+         */
+        SMILE,
+        /**
+         * CBOR，写入时带有自描述标签0xD9D9F7
+         */
+        CBOR;
+
+        static final int HEADER_LENGTH = 3;
+
+        ObjectMapper mapper() {
+            try {
+                switch (this) {
+                    case SMILE:
+                        return SmileSupport.MAPPER;
+                    case CBOR:
+                        return CborSupport.MAPPER;
+                    default:
+                        return JsonType.MAPPER;
                 }
+            } catch (NoClassDefFoundError e) {
+                throw new HibernateException("format " + name().toLowerCase() + " requires jackson-dataformat-" + name().toLowerCase(), e);
             }
         }
+
+        /**
+         * 按开头的字节识别编码：smile的头部":)\n"；CBOR的对象/数组及自描述标签的第一个字节都不小于0x80（UTF-8的BOM除外），
+         * 其他为文本json
+         */
+        static Format detect(PushbackInputStream in) throws IOException {
+            byte[] head = new byte[HEADER_LENGTH];
+            int length = 0;
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+                length += n;
+            }
+            if (length > 0) {
+                in.unread(head, 0, length);
+            }
+            if (length == HEADER_LENGTH && head[0] == ':' && head[1] == ')' && head[2] == '\n') {
+                return SMILE;
+            }
+            boolean bom = length == HEADER_LENGTH && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF;
+            if (length > 0 && (head[0] & 0xFF) >= 0x80 && !bom) {
+                return CBOR;
+            }
+            return JSON;
+        }
+    }
+
+    /**
+     * 单独的类持有二进制编码的mapper，未引入对应的jackson-dataformat时不影响JsonType本身
+     */
+    private static final class SmileSupport {
+
+        static final ObjectMapper MAPPER = new ObjectMapper(new SmileFactory());
+    }
+
+    private static final class CborSupport {
+
+        static final ObjectMapper MAPPER;
+
+        static {
+            CBORFactory factory = new CBORFactory();
+            factory.enable(CBORGenerator.Feature.WRITE_TYPE_HEADER);
+            MAPPER = new ObjectMapper(factory);
+        }
+    }
+
+    /**
+     * 交给jdbc驱动时直接使用内部数组，不再复制。驱动可能在executeBatch时才读取流，所以每次写入使用新的缓冲区
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    private static final class ExposedCharArrayWriter extends CharArrayWriter {
+
+        ExposedCharArrayWriter(int size) {
+            super(size);
+        }
+
+        Reader toReader() {
+            return new CharArrayReader(buf, 0, count);
+        }
     }
 }
@@ -0,0 +1,122 @@
+package cn.wuxia.common.hibernate.annotation;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * {@link JsonType}延迟解析（lazy=true）时的属性类型。加载时只保存数据库中的原始内容，第一次调用{@link #get()}时才解析，
+ * 并发调用时只解析一次；没有调用过{@link #get()}/{@link #set(Object)}的值保存时原样写回，不再序列化。
+ *
+ * <pre>
+ * &#64;Type(type = "cn.wuxia.common.hibernate.annotation.JsonType", parameters = {
+ *         &#64;Parameter(name = "classType", value = "com.xxx.Payload"), &#64;Parameter(name = "lazy", value = "true") })
+ * private LazyJson&lt;Payload&gt; payload;
+ * </pre>
+ *
+ * @param <T> classType
+ * @author songlin
+ */
+public final class LazyJson<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JsonType type;
+
+    /**
+     * 数据库中的原始内容：BLOB字段为byte[]，文本字段为String
+     */
+    private final Object raw;
+
+    private volatile boolean parsed;
+
+    private T value;
+
+    LazyJson(JsonType type, Object raw) {
+        this.type = type;
+        this.raw = raw;
+    }
+
+    private LazyJson(T value) {
+        this.type = null;
+        this.raw = null;
+        this.value = value;
+        this.parsed = true;
+    }
+
+    /**
+     * 由已有的值创建，保存时序列化
+     *
+     * @param value
+     * @return
+     */
+    public static <T> LazyJson<T> of(T value) {
+        return new LazyJson<>(value);
+    }
+
+    /**
+     * 获取值，第一次调用时解析原始内容。返回的对象修改后保存时会重新序列化
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        if (!parsed) {
+            synchronized (this) {
+                if (!parsed) {
+                    value = (T) type.parse(raw);
+                    parsed = true;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 替换值，保存时序列化新的值
+     *
+     * @param value
+     */
+    public synchronized void set(T value) {
+        this.value = value;
+        this.parsed = true;
+    }
+
+    /**
+     * @return 是否已经解析（或设置了新的值）
+     */
+    public boolean isParsed() {
+        return parsed;
+    }
+
+    Object getRaw() {
+        return raw;
+    }
+
+    /**
+     * @return 共用原始内容的未解析副本
+     */
+    LazyJson<T> copy() {
+        return new LazyJson<>(type, raw);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LazyJson)) {
+            return false;
+        }
+        return Objects.equals(get(), ((LazyJson<?>) o).get());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(get());
+    }
+
+    @Override
+    public String toString() {
+        return parsed ? String.valueOf(value) : "LazyJson[unparsed]";
+    }
+}
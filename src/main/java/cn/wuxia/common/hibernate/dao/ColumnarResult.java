@@ -0,0 +1,321 @@
+package cn.wuxia.common.hibernate.dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 按列保存的查询结果，用于报表、图表等大数据量的统计查询。
+ * 整数列保存为long[]，浮点列保存为double[]，日期时间列保存为毫秒数的long[]，其他列保存为Object[]，
+ * 带小数或超过18位的DECIMAL/NUMERIC列保持BigDecimal，不转换为有精度损失的double。
+ * 每列的null值记录在BitSet中，读取时不再为每行分配Object[]/Map，数值也不装箱。
+ * <p>
+ * {@link #getLongs(int)}等方法返回内部数组，只有前{@link #getRowCount()}个元素有效，null值对应的元素为0。
+ *
+ * @author songlin
+ * @see SupportHibernateDao#queryColumnar(String, Object...)
+ */
+public class ColumnarResult {
+
+    /**
+     * 列的存储类型
+     */
+    public enum ColumnType {
+        /**
+         * 整数，long[]
+         */
+        LONG,
+        /**
+         * 浮点数，double[]
+         */
+        DOUBLE,
+        /**
+         * 日期时间，毫秒数的long[]
+         */
+        TIMESTAMP,
+        /**
+         * 其他（包括BigDecimal），Object[]
+         */
+        OBJECT
+    }
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final String[] names;
+
+    private final ColumnType[] types;
+
+    private final long[][] longs;
+
+    private final double[][] doubles;
+
+    private final Object[][] objects;
+
+    private final BitSet[] nulls;
+
+    private int rowCount;
+
+    private int capacity;
+
+    ColumnarResult(String[] names, ColumnType[] types, int capacity) {
+        this.names = names;
+        this.types = types;
+        this.capacity = Math.max(capacity, 1);
+        this.longs = new long[names.length][];
+        this.doubles = new double[names.length][];
+        this.objects = new Object[names.length][];
+        this.nulls = new BitSet[names.length];
+        for (int i = 0; i < names.length; i++) {
+            switch (types[i]) {
+                case LONG:
+                case TIMESTAMP:
+                    longs[i] = new long[this.capacity];
+                    break;
+                case DOUBLE:
+                    doubles[i] = new double[this.capacity];
+                    break;
+                default:
+                    objects[i] = new Object[this.capacity];
+            }
+            nulls[i] = new BitSet();
+        }
+    }
+
+    /**
+     * 按结果集的列创建
+     *
+     * @param metaData
+     * @param capacity 初始行数
+     * @return
+     * @throws SQLException
+     */
+    static ColumnarResult of(ResultSetMetaData metaData, int capacity) throws SQLException {
+        int count = metaData.getColumnCount();
+        String[] names = new String[count];
+        ColumnType[] types = new ColumnType[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+            types[i] = typeOf(metaData.getColumnType(i + 1), metaData.getPrecision(i + 1), metaData.getScale(i + 1));
+        }
+        return new ColumnarResult(names, types, Math.min(capacity, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * 由jdbc类型确定列的存储类型，没有小数的DECIMAL/NUMERIC（精度不超过18位）为整数，其他DECIMAL/NUMERIC保持BigDecimal
+     */
+    static ColumnType typeOf(int sqlType, int precision, int scale) {
+        switch (sqlType) {
+            case Types.BIGINT:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return ColumnType.LONG;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return scale == 0 && precision > 0 && precision <= 18 ? ColumnType.LONG : ColumnType.OBJECT;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return ColumnType.DOUBLE;
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+            case Types.TIME_WITH_TIMEZONE:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return ColumnType.TIMESTAMP;
+            default:
+                return ColumnType.OBJECT;
+        }
+    }
+
+    /**
+     * 读取结果集的当前行
+     */
+    void read(ResultSet rs) throws SQLException {
+        if (rowCount == capacity) {
+            grow();
+        }
+        int row = rowCount;
+        for (int i = 0; i < names.length; i++) {
+            switch (types[i]) {
+                case LONG:
+                    longs[i][row] = rs.getLong(i + 1);
+                    if (rs.wasNull()) {
+                        nulls[i].set(row);
+                    }
+                    break;
+                case DOUBLE:
+                    doubles[i][row] = rs.getDouble(i + 1);
+                    if (rs.wasNull()) {
+                        nulls[i].set(row);
+                    }
+                    break;
+                case TIMESTAMP:
+                    Timestamp timestamp = rs.getTimestamp(i + 1);
+                    if (timestamp == null) {
+                        nulls[i].set(row);
+                    } else {
+                        longs[i][row] = timestamp.getTime();
+                    }
+                    break;
+                default:
+                    Object value = rs.getObject(i + 1);
+                    if (value == null) {
+                        nulls[i].set(row);
+                    } else {
+                        objects[i][row] = value;
+                    }
+            }
+        }
+        rowCount++;
+    }
+
+    private void grow() {
+        int newCapacity = capacity + (capacity >> 1) + 1;
+        for (int i = 0; i < names.length; i++) {
+            if (longs[i] != null) {
+                longs[i] = Arrays.copyOf(longs[i], newCapacity);
+            } else if (doubles[i] != null) {
+                doubles[i] = Arrays.copyOf(doubles[i], newCapacity);
+            } else {
+                objects[i] = Arrays.copyOf(objects[i], newCapacity);
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    public String[] getColumnNames() {
+        return names.clone();
+    }
+
+    public String getColumnName(int column) {
+        return names[column];
+    }
+
+    public ColumnType getColumnType(int column) {
+        return types[column];
+    }
+
+    /**
+     * @param name 列名（别名），忽略大小写
+     * @return 不存在时返回-1
+     */
+    public int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isNull(int column, int row) {
+        return nulls[column].get(row);
+    }
+
+    /**
+     * @param column
+     * @return 该列的null值，下标为行号
+     */
+    public BitSet getNulls(int column) {
+        return nulls[column];
+    }
+
+    /**
+     * @param column {@link ColumnType#LONG}或{@link ColumnType#TIMESTAMP}列
+     * @return 内部数组，只有前{@link #getRowCount()}个元素有效
+     */
+    public long[] getLongs(int column) {
+        if (longs[column] == null) {
+            throw new IllegalArgumentException("column " + names[column] + " is " + types[column]);
+        }
+        return longs[column];
+    }
+
+    /**
+     * @param column {@link ColumnType#DOUBLE}列
+     * @return 内部数组，只有前{@link #getRowCount()}个元素有效
+     */
+    public double[] getDoubles(int column) {
+        if (doubles[column] == null) {
+            throw new IllegalArgumentException("column " + names[column] + " is " + types[column]);
+        }
+        return doubles[column];
+    }
+
+    /**
+     * @param column {@link ColumnType#OBJECT}列
+     * @return 内部数组，只有前{@link #getRowCount()}个元素有效
+     */
+    public Object[] getObjects(int column) {
+        if (objects[column] == null) {
+            throw new IllegalArgumentException("column " + names[column] + " is " + types[column]);
+        }
+        return objects[column];
+    }
+
+    /**
+     * @return 整数或日期列的值，null时返回0
+     */
+    public long getLong(int column, int row) {
+        checkRow(row);
+        return getLongs(column)[row];
+    }
+
+    /**
+     * @return 数值列（包括BigDecimal）的值，null时返回0
+     */
+    public double getDouble(int column, int row) {
+        checkRow(row);
+        if (types[column] == ColumnType.LONG) {
+            return longs[column][row];
+        }
+        if (types[column] == ColumnType.OBJECT && objects[column][row] instanceof Number) {
+            return ((Number) objects[column][row]).doubleValue();
+        }
+        if (types[column] == ColumnType.OBJECT && nulls[column].get(row)) {
+            return 0;
+        }
+        return getDoubles(column)[row];
+    }
+
+    /**
+     * 按列类型返回装箱后的值：Long、Double、{@link Timestamp}或原始值
+     */
+    public Object getObject(int column, int row) {
+        checkRow(row);
+        if (nulls[column].get(row)) {
+            return null;
+        }
+        switch (types[column]) {
+            case LONG:
+                return longs[column][row];
+            case DOUBLE:
+                return doubles[column][row];
+            case TIMESTAMP:
+                return new Timestamp(longs[column][row]);
+            default:
+                return objects[column][row];
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("row: " + row + ", rowCount: " + rowCount);
+        }
+    }
+}
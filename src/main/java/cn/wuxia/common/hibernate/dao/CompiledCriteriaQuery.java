@@ -0,0 +1,296 @@
+package cn.wuxia.common.hibernate.dao;
+
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Sort;
+import cn.wuxia.common.util.StringUtil;
+import org.apache.commons.lang3.ClassUtils;
+import org.hibernate.query.Query;
+
+import java.util.*;
+
+/**
+ * 按查询形状（实体、条件的属性及MatchType、排序）编译好的hql，代替每次由{@link Conditions}重新构建CriteriaQuery。
+ * 相同形状的查询使用同一条hql，hibernate的query plan缓存直接命中，之后只需绑定参数。
+ * 只编译语义明确的条件：实体的直接属性（不含"."）、值的类型与属性类型一致，其他情况返回空，由调用方回退到CriteriaQuery。
+ *
+ * @author songlin
+ */
+public class CompiledCriteriaQuery {
+
+    /**
+     * 不能编译的形状，缓存后不再重复解析
+     */
+    static final CompiledCriteriaQuery UNSUPPORTED = new CompiledCriteriaQuery(null, null, null, null, null);
+
+    private static final String ALIAS = "e";
+
+    private final String hql;
+
+    private final String countHql;
+
+    private final String idHql;
+
+    private final MatchType[] matchTypes;
+
+    private final Class<?>[] propertyTypes;
+
+    private CompiledCriteriaQuery(String hql, String countHql, String idHql, MatchType[] matchTypes, Class<?>[] propertyTypes) {
+        this.hql = hql;
+        this.countHql = countHql;
+        this.idHql = idHql;
+        this.matchTypes = matchTypes;
+        this.propertyTypes = propertyTypes;
+    }
+
+    /**
+     * 过滤掉不生效的条件，与{@link cn.wuxia.common.hibernate.ConditionsSpecification}一致：除is null及is not null外值为空的条件忽略
+     *
+     * @param conditions
+     * @return 含有null条件或属性为空时返回null
+     */
+    static List<Conditions> activeConditions(Conditions[] conditions) {
+        List<Conditions> active = new ArrayList<>();
+        if (conditions == null) {
+            return active;
+        }
+        for (Conditions condition : conditions) {
+            if (condition == null || StringUtil.isBlank(condition.getProperty()) || condition.getMatchType() == null) {
+                return null;
+            }
+            if (condition.getMatchType() != MatchType.ISN && condition.getMatchType() != MatchType.INN && StringUtil.isBlank(condition.getValue())) {
+                continue;
+            }
+            active.add(condition);
+        }
+        return active;
+    }
+
+    /**
+     * 查询形状的key
+     *
+     * @param sort
+     * @param conditions 生效的条件
+     * @return
+     */
+    static String shapeKey(Sort sort, List<Conditions> conditions) {
+        StringBuilder key = new StringBuilder();
+        for (Conditions condition : conditions) {
+            key.append(condition.getProperty()).append(' ').append(condition.getMatchType()).append(',');
+        }
+        key.append('|');
+        if (sort != null) {
+            Iterator<Sort.Order> it = sort.iterator();
+            while (it.hasNext()) {
+                Sort.Order order = it.next();
+                key.append(order.getProperty()).append(order.isAscending() ? " asc," : " desc,");
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 编译查询形状，属性不存在、为关联集合或含有"."时返回{@link #UNSUPPORTED}
+     *
+     * @param metadata   实体
+     * @param sort
+     * @param conditions 生效的条件
+     * @return
+     */
+    static CompiledCriteriaQuery compile(EntityMetadataRegistry.EntityMetadata metadata, Sort sort, List<Conditions> conditions) {
+        MatchType[] matchTypes = new MatchType[conditions.size()];
+        Class<?>[] propertyTypes = new Class<?>[conditions.size()];
+        StringBuilder where = new StringBuilder();
+        for (int i = 0; i < conditions.size(); i++) {
+            Conditions condition = conditions.get(i);
+            Class<?> propertyType = propertyType(metadata, condition.getProperty());
+            if (propertyType == null) {
+                return UNSUPPORTED;
+            }
+            matchTypes[i] = condition.getMatchType();
+            propertyTypes[i] = propertyType;
+            String path = ALIAS + "." + condition.getProperty();
+            String param = ":p" + i;
+            where.append(i == 0 ? " where " : " and ");
+            switch (condition.getMatchType()) {
+                case EQ:
+                    where.append(path).append(" = ").append(param);
+                    break;
+                case NE:
+                    where.append(path).append(" <> ").append(param);
+                    break;
+                case ISN:
+                    where.append(path).append(" is null");
+                    break;
+                case INN:
+                    where.append(path).append(" is not null");
+                    break;
+                case FL:
+                case LL:
+                case RL:
+                    where.append(path).append(" like ").append(param);
+                    break;
+                case LTE:
+                    where.append(path).append(" <= ").append(param);
+                    break;
+                case LT:
+                    where.append(path).append(" < ").append(param);
+                    break;
+                case GTE:
+                    where.append(path).append(" >= ").append(param);
+                    break;
+                case GT:
+                    where.append(path).append(" > ").append(param);
+                    break;
+                case IN:
+                    where.append(path).append(" in (").append(param).append(")");
+                    break;
+                case NIN:
+                    where.append(path).append(" not in (").append(param).append(")");
+                    break;
+                case BW:
+                    where.append(path).append(" between ").append(param).append(" and ").append(param).append("e");
+                    break;
+                default:
+                    return UNSUPPORTED;
+            }
+        }
+        StringBuilder orderBy = new StringBuilder();
+        if (sort != null) {
+            Iterator<Sort.Order> it = sort.iterator();
+            while (it.hasNext()) {
+                Sort.Order order = it.next();
+                if (propertyType(metadata, order.getProperty()) == null) {
+                    return UNSUPPORTED;
+                }
+                orderBy.append(orderBy.length() == 0 ? " order by " : ", ").append(ALIAS).append('.').append(order.getProperty())
+                        .append(order.isAscending() ? " asc" : " desc");
+            }
+        }
+        String from = " from " + metadata.getEntityName() + " " + ALIAS + where;
+        String id = metadata.getIdName() != null ? ALIAS + "." + metadata.getIdName() : ALIAS;
+        return new CompiledCriteriaQuery("select " + ALIAS + from + orderBy, "select count(" + ALIAS + ")" + from, "select " + id + from + orderBy,
+                matchTypes, propertyTypes);
+    }
+
+    private static Class<?> propertyType(EntityMetadataRegistry.EntityMetadata metadata, String property) {
+        return property != null && metadata.isSortable(property) ? metadata.getPropertyType(property) : null;
+    }
+
+    public boolean isSupported() {
+        return hql != null;
+    }
+
+    public String getHql() {
+        return hql;
+    }
+
+    public String getCountHql() {
+        return countHql;
+    }
+
+    /**
+     * @return 只查询id的语句（含排序），用于判断是否存在及先查id的分页
+     */
+    public String getIdHql() {
+        return idHql;
+    }
+
+    /**
+     * 条件的值是否都能直接绑定：值的类型与属性类型一致，like条件的值为字符串，in条件的值为非空集合或数组，between的两个值都不为空
+     *
+     * @param conditions 生效的条件
+     * @return
+     */
+    boolean isBindable(List<Conditions> conditions) {
+        for (int i = 0; i < conditions.size(); i++) {
+            Conditions condition = conditions.get(i);
+            Object value = condition.getValue();
+            switch (matchTypes[i]) {
+                case ISN:
+                case INN:
+                    break;
+                case FL:
+                case LL:
+                case RL:
+                    if (!(value instanceof String) || propertyTypes[i] != String.class) {
+                        return false;
+                    }
+                    break;
+                case IN:
+                case NIN:
+                    Collection<?> values = toCollection(value);
+                    if (values == null || values.isEmpty()) {
+                        return false;
+                    }
+                    for (Object element : values) {
+                        if (!isAssignable(element, propertyTypes[i])) {
+                            return false;
+                        }
+                    }
+                    break;
+                case BW:
+                    if (!isAssignable(value, propertyTypes[i]) || !isAssignable(condition.getAnotherValue(), propertyTypes[i])) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (!isAssignable(value, propertyTypes[i])) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 绑定条件的值
+     *
+     * @param query      由{@link #getHql()}或{@link #getCountHql()}创建的查询
+     * @param conditions 生效的条件，需先通过{@link #isBindable(List)}检查
+     */
+    void bind(Query<?> query, List<Conditions> conditions) {
+        for (int i = 0; i < conditions.size(); i++) {
+            Conditions condition = conditions.get(i);
+            String param = "p" + i;
+            switch (matchTypes[i]) {
+                case ISN:
+                case INN:
+                    break;
+                case FL:
+                    query.setParameter(param, "%" + condition.getValue() + "%");
+                    break;
+                case LL:
+                    query.setParameter(param, condition.getValue() + "%");
+                    break;
+                case RL:
+                    query.setParameter(param, "%" + condition.getValue());
+                    break;
+                case IN:
+                case NIN:
+                    query.setParameterList(param, toCollection(condition.getValue()));
+                    break;
+                case BW:
+                    query.setParameter(param, condition.getValue());
+                    query.setParameter(param + "e", condition.getAnotherValue());
+                    break;
+                default:
+                    query.setParameter(param, condition.getValue());
+            }
+        }
+    }
+
+    private static Collection<?> toCollection(Object value) {
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+        return null;
+    }
+
+    private static boolean isAssignable(Object value, Class<?> type) {
+        return value != null && ClassUtils.isAssignable(value.getClass(), type, true);
+    }
+}
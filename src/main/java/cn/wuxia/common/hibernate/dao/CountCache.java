@@ -0,0 +1,197 @@
+package cn.wuxia.common.hibernate.dao;
+
+import cn.wuxia.common.orm.query.Conditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 分页查询总记录数的缓存，key为实体、规范化后的查询语句、绑定参数及Conditions（属性、匹配方式、值）。
+ * 通过DAO写入实体时按实体类失效（递增实体的版本号，旧版本的缓存不再命中，随TTL或容量淘汰）；
+ * 在spring事务中写入时，事务提交后才失效，提交前该事务内的count不读取也不写入缓存。
+ * 多个DAO共用一个实例时写入才能相互失效，声明为spring bean即自动注入到所有DAO。
+ * 注意：只按DAO的实体类失效，关联其他表的查询在TTL内可能返回旧的总数。
+ *
+ * @author songlin
+ */
+public class CountCache {
+
+    private final Cache<List<Object>, Long> cache;
+
+    private final ConcurrentMap<Class<?>, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttl         缓存时间
+     * @param unit        缓存时间单位
+     * @param maximumSize 最多缓存的总数个数
+     */
+    public CountCache(long ttl, TimeUnit unit, long maximumSize) {
+        this.cache = CacheBuilder.newBuilder().expireAfterWrite(ttl, unit).maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * 获取缓存的总数，未命中时调用loader查询并缓存
+     *
+     * @param entityClass DAO的实体类
+     * @param query       查询语句，criteria查询为空
+     * @param values      绑定参数，数组或Map
+     * @param conditions  criteria查询的条件
+     * @param loader      执行count查询
+     * @return
+     */
+    public long get(Class<?> entityClass, String query, Object values, List<Conditions> conditions, Supplier<Long> loader) {
+        PendingInvalidation pending = pending(false);
+        if (pending != null && pending.entityClasses.contains(entityClass)) {
+            return loader.get();
+        }
+        try {
+            return cache.get(key(entityClass, query, values, conditions), loader::get);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 使该实体的所有缓存失效
+     *
+     * @param entityClass
+     */
+    public void invalidate(Class<?> entityClass) {
+        version(entityClass).incrementAndGet();
+    }
+
+    /**
+     * 在spring事务中时，事务提交后使该实体的所有缓存失效，否则立即失效
+     *
+     * @param entityClass
+     */
+    public void invalidateAfterCommit(Class<?> entityClass) {
+        PendingInvalidation pending = pending(true);
+        if (pending == null) {
+            invalidate(entityClass);
+        } else {
+            pending.entityClasses.add(entityClass);
+        }
+    }
+
+    /**
+     * @param create 当前事务还没有时是否创建
+     * @return 当前事务待失效的实体，不在spring事务中时为空
+     */
+    private PendingInvalidation pending(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        PendingInvalidation pending = (PendingInvalidation) TransactionSynchronizationManager.getResource(this);
+        if (pending == null && create) {
+            pending = new PendingInvalidation();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 缓存命中率等统计信息
+     *
+     * @return
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private AtomicLong version(Class<?> entityClass) {
+        return versions.computeIfAbsent(entityClass, clazz -> new AtomicLong());
+    }
+
+    /**
+     * key由值对象组成，依赖值的equals/hashCode；数组及集合复制为不可变的List
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> key(Class<?> entityClass, String query, Object values, List<Conditions> conditions) {
+        List<Object> key = new ArrayList<>();
+        key.add(entityClass);
+        key.add(version(entityClass).get());
+        key.add(StringUtils.normalizeSpace(query));
+        if (values instanceof Map) {
+            Map<String, Object> map = new HashMap<>();
+            ((Map<String, ?>) values).forEach((name, value) -> map.put(name, keyValue(value)));
+            key.add(map);
+        } else {
+            key.add(keyValue(values));
+        }
+        if (conditions != null) {
+            for (Conditions condition : conditions) {
+                if (condition == null) {
+                    continue;
+                }
+                key.add(Arrays.asList(condition.getProperty(), condition.getMatchType(), keyValue(condition.getValue()),
+                        keyValue(condition.getAnotherValue())));
+            }
+        }
+        return Collections.unmodifiableList(key);
+    }
+
+    private static Object keyValue(Object value) {
+        if (value instanceof Object[]) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (Object[]) value) {
+                list.add(keyValue(element));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        if (value != null && value.getClass().isArray()) {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < Array.getLength(value); i++) {
+                list.add(Array.get(value, i));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        if (value instanceof Collection) {
+            return keyValue(((Collection<?>) value).toArray());
+        }
+        return value;
+    }
+
+    /**
+     * 当前事务写入过的实体，提交后失效
+     */
+    private class PendingInvalidation extends TransactionSynchronizationAdapter {
+
+        private final Set<Class<?>> entityClasses = new HashSet<>();
+
+        @Override
+        public void afterCommit() {
+            entityClasses.forEach(CountCache.this::invalidate);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CountCache.this);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package cn.wuxia.common.hibernate.dao;
+
+import cn.wuxia.common.exception.AppServiceException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 由分页查询语句生成count语句，按原语句缓存生成结果，同一语句只解析一次。
+ * <ul>
+ * <li>普通查询：去掉select列表及order by，改为 select count(*) / count(1)</li>
+ * <li>hql的group by（单个分组字段且无having）：select count(distinct 分组字段)；select distinct 单个字段：select count(distinct 字段)，
+ * count(distinct)不计null，再加上是否存在null分组（hql不支持from子查询）</li>
+ * <li>sql的group by：select count(1) from (select 1 from ... group by ...)，有having或distinct时保留select列表作为子查询</li>
+ * <li>select列表或order by中含有绑定参数、聚合/窗口函数、union、limit等不能安全改写的sql，整体作为子查询</li>
+ * </ul>
+ * 复杂的语句可通过{@link #register(String, String)}指定手写的count语句。
+ *
+ * @author songlin
+ */
+public class CountQueryDeriver {
+
+    private static final Pattern FROM = Pattern.compile("from\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_BY = Pattern.compile("order\\s+by\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern GROUP_BY = Pattern.compile("group\\s+by\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern HAVING = Pattern.compile("having\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern UNION = Pattern.compile("(union|intersect|except)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern LIMIT = Pattern.compile("(limit|offset|fetch\\s+first|for\\s+update)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SELECT_DISTINCT = Pattern.compile("^\\s*select\\s+distinct\\s+", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern SELECT = Pattern.compile("^\\s*select\\s+", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern AGGREGATE = Pattern.compile("\\b(count|sum|avg|min|max|group_concat|string_agg|listagg)\\s*\\(|\\bover\\s*\\(",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern JOIN_FETCH = Pattern.compile("\\bjoin\\s+fetch\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Cache<String, String> hqlCache;
+
+    private final Cache<String, String> sqlCache;
+
+    private final ConcurrentMap<String, String> registered = new ConcurrentHashMap<>();
+
+    public CountQueryDeriver() {
+        this(1024);
+    }
+
+    /**
+     * @param maximumSize 最多缓存的语句个数
+     */
+    public CountQueryDeriver(long maximumSize) {
+        this.hqlCache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.sqlCache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * 指定查询语句的count语句，分页时不再自动生成
+     *
+     * @param query      分页查询的语句（动态条件拼接前）
+     * @param countQuery 手写的count语句，需与query使用相同的绑定参数及动态条件
+     */
+    public void register(String query, String countQuery) {
+        registered.put(StringUtils.normalizeSpace(query), countQuery);
+    }
+
+    /**
+     * @param query 分页查询的语句（动态条件拼接前）
+     * @return 未指定时返回null
+     */
+    public String getRegistered(String query) {
+        return registered.isEmpty() ? null : registered.get(StringUtils.normalizeSpace(query));
+    }
+
+    /**
+     * 生成hql的count语句
+     *
+     * @param hql
+     * @return
+     */
+    public String deriveHql(String hql) {
+        return get(hqlCache, hql, true);
+    }
+
+    /**
+     * 生成sql的count语句
+     *
+     * @param sql
+     * @return
+     */
+    public String deriveSql(String sql) {
+        return get(sqlCache, sql, false);
+    }
+
+    private String get(Cache<String, String> cache, String query, boolean hql) {
+        try {
+            return cache.get(query, () -> hql ? buildHql(query) : buildSql(query));
+        } catch (ExecutionException e) {
+            throw new AppServiceException(e.getCause().getMessage());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static String buildHql(String hql) {
+        int from = indexOf(hql, FROM, false);
+        if (from < 0) {
+            throw new AppServiceException("查询语句有误，缺少from： [" + hql + "]");
+        }
+        String select = hql.substring(0, from);
+        String body = stripOrderBy(hql.substring(from));
+        // 去掉fetch，否则count时hibernate会报fetch的关联不在select列表中
+        body = JOIN_FETCH.matcher(body).replaceAll("join");
+        int groupBy = indexOf(body, GROUP_BY, false);
+        if (groupBy >= 0) {
+            if (indexOf(body, HAVING, false) >= 0) {
+                throw new AppServiceException("查询语句有误，group by ... having 请手写count语句或使用sql查询：" + hql);
+            }
+            Matcher matcher = GROUP_BY.matcher(body);
+            matcher.find(groupBy);
+            String groupExpression = body.substring(matcher.end()).trim();
+            if (indexOf(groupExpression, Pattern.compile(","), false) >= 0) {
+                throw new AppServiceException("查询语句有误，多个group by字段请手写count语句或使用sql查询：" + hql);
+            }
+            return countDistinct(groupExpression) + body.substring(0, groupBy).trim();
+        }
+        Matcher distinct = SELECT_DISTINCT.matcher(select);
+        if (distinct.find()) {
+            String column = select.substring(distinct.end()).trim();
+            if (column.isEmpty() || indexOf(column, Pattern.compile(","), false) >= 0 || StringUtils.startsWithIgnoreCase(column, "new ")) {
+                throw new AppServiceException("查询语句有误，select distinct 多个字段请手写count语句或使用sql查询：" + hql);
+            }
+            return countDistinct(column) + body;
+        }
+        return "select count(*) " + body;
+    }
+
+    /**
+     * count(distinct expression)加上null值的分组（存在值为null的行时加1）
+     */
+    private static String countDistinct(String expression) {
+        return "select count(distinct " + expression + ") + coalesce(max(case when " + expression + " is null then 1 else 0 end), 0) ";
+    }
+
+    private static String buildSql(String sql) {
+        String wrapped = "select count(1) as count from (" + sql + ") orgi";
+        int from = indexOf(sql, FROM, false);
+        if (from < 0 || indexOf(sql, UNION, false) >= 0) {
+            return wrapped;
+        }
+        String select = sql.substring(0, from);
+        int orderBy = indexOf(sql, ORDER_BY, true);
+        String body = StringUtils.stripEnd(orderBy > from ? sql.substring(from, orderBy) : sql.substring(from), null);
+        String order = orderBy > from ? sql.substring(orderBy) : "";
+        if (!SELECT.matcher(select).find() || indexOf(sql.substring(from), LIMIT, false) >= 0 || hasParameter(select) || hasParameter(order)) {
+            return wrapped;
+        }
+        boolean groupBy = indexOf(body, GROUP_BY, false) >= 0;
+        boolean having = indexOf(body, HAVING, false) >= 0;
+        boolean distinct = SELECT_DISTINCT.matcher(select).find();
+        if (distinct || having) {
+            // select列表决定结果行数（distinct）或被having引用，保留select列表，只去掉order by
+            return "select count(1) as count from (" + select + body + ") orgi";
+        }
+        if (groupBy) {
+            return "select count(1) as count from (select 1 " + body + ") orgi";
+        }
+        if (AGGREGATE.matcher(select).find()) {
+            // 没有group by的聚合查询只返回一行
+            return wrapped;
+        }
+        return "select count(1) as count " + body;
+    }
+
+    private static String stripOrderBy(String query) {
+        int orderBy = indexOf(query, ORDER_BY, true);
+        return orderBy > 0 ? query.substring(0, orderBy).trim() : query.trim();
+    }
+
+    /**
+     * 语句中是否含有绑定参数（? 或 :name），不含字符串内的
+     */
+    private static boolean hasParameter(String query) {
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && (c == '?' || c == ':' && i + 1 < query.length() && Character.isJavaIdentifierStart(query.charAt(i + 1))
+                    && (i == 0 || query.charAt(i - 1) != ':'))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查找最外层（不在括号及字符串内）关键字的位置
+     *
+     * @param query
+     * @param keyword
+     * @param last    true: 最后出现的位置，false: 第一次出现的位置
+     * @return 不存在时返回-1
+     */
+    static int indexOf(String query, Pattern keyword, boolean last) {
+        Matcher matcher = keyword.matcher(query);
+        int depth = 0;
+        boolean quoted = false;
+        int index = -1;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && (i == 0 || !Character.isLetterOrDigit(query.charAt(i - 1)) && query.charAt(i - 1) != '_' && query.charAt(i - 1) != '.')
+                    && matcher.region(i, query.length()).lookingAt()) {
+                index = i;
+                if (!last) {
+                    break;
+                }
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,410 @@
+package cn.wuxia.common.hibernate.dao;
+
+import cn.wuxia.common.orm.PageSQLHandler;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Sort;
+import cn.wuxia.common.util.StringUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * {@link PageSQLHandler#dualDynamicCondition}结果的缓存，key为（查询语句、条件的形状、排序字段及方向）。
+ * 第一次执行时记录拼接后的语句，并按条件的顺序及匹配方式生成参数绑定计划：
+ * <ul>
+ * <li>isNull/isNotNull：没有参数</li>
+ * <li>like：条件的值，或加上%后的值</li>
+ * <li>in/not in：集合作为一个参数，或集合的每个元素</li>
+ * <li>between：两个值</li>
+ * <li>其他：条件的值</li>
+ * </ul>
+ * 值为空的条件没有参数。新增的参数插入在原语句中拼接条件的位置之前的参数之后（按位置绑定），或按参数名在语句中出现的顺序（按名称绑定）。
+ * 计划按本次的参数校验（equals），一致时缓存，之后相同形状的查询直接返回缓存的语句（同一个String实例，hibernate的hql/sql plan缓存直接命中），
+ * 只按计划绑定参数；不一致（如值拼接到了语句中）时该形状始终调用{@link PageSQLHandler#dualDynamicCondition}。
+ *
+ * @author songlin
+ */
+public class DynamicConditionCache {
+
+    private static final Rewrite UNSUPPORTED = new Rewrite(null, null, null);
+
+    private final Cache<List<Object>, Rewrite> cache;
+
+    public DynamicConditionCache() {
+        this(512);
+    }
+
+    /**
+     * @param maximumSize 最多缓存的查询形状个数
+     */
+    public DynamicConditionCache(long maximumSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * 拼接动态条件，新增的参数添加到paramValue中
+     *
+     * @param query      查询语句
+     * @param conditions 动态条件
+     * @param sort       排序，不为空时同时缓存加上order by的语句
+     * @param paramValue 按位置绑定的参数
+     * @param orderBy    生成order by子句
+     * @return
+     */
+    public Rewrite rewrite(String query, List<Conditions> conditions, Sort sort, List<Object> paramValue, Function<String, String> orderBy) {
+        List<Object> key = key(query, conditions, sort, paramValue.size(), null);
+        Rewrite rewrite = cache.getIfPresent(key);
+        if (rewrite != null && rewrite.isSupported()) {
+            Object[] originals = paramValue.toArray();
+            paramValue.clear();
+            for (Step step : rewrite.steps) {
+                paramValue.add(step.resolve(originals, conditions));
+            }
+            return rewrite;
+        }
+        Object[] originals = paramValue.toArray();
+        String rewritten = PageSQLHandler.dualDynamicCondition(query, conditions, paramValue);
+        Rewrite result = new Rewrite(rewritten, rewritten + orderBy.apply(rewritten), null);
+        if (rewrite == null) {
+            List<Step> steps = positionalPlan(query, rewritten, originals, paramValue, conditions);
+            cache.put(key, steps != null ? new Rewrite(result.query, result.pagedQuery, steps) : UNSUPPORTED);
+        }
+        return result;
+    }
+
+    /**
+     * 拼接动态条件，新增的参数添加到paramValue中
+     *
+     * @param query      查询语句
+     * @param conditions 动态条件
+     * @param sort       排序，不为空时同时缓存加上order by的语句
+     * @param paramValue 按名称绑定的参数
+     * @param orderBy    生成order by子句
+     * @return
+     */
+    public Rewrite rewrite(String query, List<Conditions> conditions, Sort sort, Map<String, Object> paramValue, Function<String, String> orderBy) {
+        List<Object> key = key(query, conditions, sort, -1, paramValue.keySet());
+        Rewrite rewrite = cache.getIfPresent(key);
+        if (rewrite != null && rewrite.isSupported()) {
+            for (Map.Entry<String, Step> entry : rewrite.namedSteps.entrySet()) {
+                paramValue.put(entry.getKey(), entry.getValue().resolve(null, conditions));
+            }
+            return rewrite;
+        }
+        Map<String, Object> originals = new HashMap<>(paramValue);
+        String rewritten = PageSQLHandler.dualDynamicCondition(query, conditions, paramValue);
+        Rewrite result = new Rewrite(rewritten, rewritten + orderBy.apply(rewritten), null);
+        if (rewrite == null) {
+            Map<String, Step> namedSteps = namedPlan(rewritten, originals, paramValue, conditions);
+            cache.put(key, namedSteps != null ? new Rewrite(result.query, result.pagedQuery, namedSteps) : UNSUPPORTED);
+        }
+        return result;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * 按位置绑定的计划：原参数中拼接位置之前的部分、条件的参数、原参数的其余部分
+     *
+     * @return 与本次的参数不一致时返回null
+     */
+    private static List<Step> positionalPlan(String query, String rewritten, Object[] originals, List<Object> paramValue, List<Conditions> conditions) {
+        int added = paramValue.size() - originals.length;
+        int insertAt = countPlaceholders(query, commonPrefix(query, rewritten));
+        if (added < 0 || insertAt > originals.length) {
+            return null;
+        }
+        List<Step> steps = new ArrayList<>(paramValue.size());
+        for (int i = 0; i < originals.length; i++) {
+            if (paramValue.get(i < insertAt ? i : i + added) != originals[i]) {
+                return null;
+            }
+        }
+        for (int i = 0; i < insertAt; i++) {
+            steps.add(new Step(Step.ORIGINAL, i, -1, null, null));
+        }
+        List<Step> conditionSteps = conditionPlan(conditions, paramValue.subList(insertAt, insertAt + added));
+        if (conditionSteps == null) {
+            return null;
+        }
+        steps.addAll(conditionSteps);
+        for (int i = insertAt; i < originals.length; i++) {
+            steps.add(new Step(Step.ORIGINAL, i, -1, null, null));
+        }
+        return steps;
+    }
+
+    /**
+     * 按名称绑定的计划：新增的参数按在语句中出现的顺序对应条件的参数
+     *
+     * @return 与本次的参数不一致时返回null
+     */
+    private static Map<String, Step> namedPlan(String rewritten, Map<String, Object> originals, Map<String, Object> paramValue, List<Conditions> conditions) {
+        SortedMap<Integer, String> added = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : paramValue.entrySet()) {
+            if (originals.containsKey(entry.getKey()) && originals.get(entry.getKey()) == entry.getValue()) {
+                continue;
+            }
+            int index = indexOfParameter(rewritten, entry.getKey());
+            if (index < 0) {
+                return null;
+            }
+            added.put(index, entry.getKey());
+        }
+        List<Object> values = new ArrayList<>(added.size());
+        for (String name : added.values()) {
+            values.add(paramValue.get(name));
+        }
+        List<Step> steps = conditionPlan(conditions, values);
+        if (steps == null) {
+            return null;
+        }
+        Map<String, Step> namedSteps = new LinkedHashMap<>();
+        Iterator<Step> it = steps.iterator();
+        for (String name : added.values()) {
+            namedSteps.put(name, it.next());
+        }
+        return namedSteps;
+    }
+
+    /**
+     * 按条件的顺序及匹配方式生成条件的参数，并与实际新增的参数逐个校验
+     *
+     * @param conditions
+     * @param bound      实际新增的参数
+     * @return 不一致时返回null
+     */
+    private static List<Step> conditionPlan(List<Conditions> conditions, List<Object> bound) {
+        List<Step> steps = new ArrayList<>(bound.size());
+        if (conditions != null) {
+            for (int i = 0; i < conditions.size(); i++) {
+                Conditions condition = conditions.get(i);
+                if (condition == null || condition.getMatchType() == MatchType.ISN || condition.getMatchType() == MatchType.INN
+                        || StringUtil.isBlank(condition.getValue())) {
+                    continue;
+                }
+                Object value = condition.getValue();
+                int p = steps.size();
+                switch (condition.getMatchType()) {
+                    case FL:
+                        steps.add(likeStep(i, value, "%", "%", bound, p));
+                        break;
+                    case LL:
+                        steps.add(likeStep(i, value, "", "%", bound, p));
+                        break;
+                    case RL:
+                        steps.add(likeStep(i, value, "%", "", bound, p));
+                        break;
+                    case IN:
+                    case NIN:
+                        if (sizeOf(value) < 0 || p < bound.size() && Objects.equals(bound.get(p), value)) {
+                            steps.add(new Step(Step.VALUE, i, -1, null, null));
+                        } else {
+                            for (int j = 0; j < sizeOf(value); j++) {
+                                steps.add(new Step(Step.ELEMENT, i, j, null, null));
+                            }
+                        }
+                        break;
+                    case BW:
+                        steps.add(new Step(Step.VALUE, i, -1, null, null));
+                        steps.add(new Step(Step.ANOTHER, i, -1, null, null));
+                        break;
+                    default:
+                        steps.add(new Step(Step.VALUE, i, -1, null, null));
+                }
+            }
+        }
+        if (steps.size() != bound.size()) {
+            return null;
+        }
+        for (int p = 0; p < steps.size(); p++) {
+            if (!Objects.equals(steps.get(p).resolve(null, conditions), bound.get(p))) {
+                return null;
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * like条件绑定原值（%拼接在语句中）或加上%后的值
+     */
+    private static Step likeStep(int index, Object value, String prefix, String suffix, List<Object> bound, int p) {
+        if (p < bound.size() && Objects.equals(bound.get(p), value)) {
+            return new Step(Step.VALUE, index, -1, null, null);
+        }
+        return new Step(Step.TEXT, index, -1, prefix, suffix);
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 语句前end个字符中位置参数（?）的个数，不含字符串内的
+     */
+    private static int countPlaceholders(String query, int end) {
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < end; i++) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int indexOfParameter(String query, String name) {
+        String parameter = ":" + name;
+        for (int index = query.indexOf(parameter); index >= 0; index = query.indexOf(parameter, index + 1)) {
+            int end = index + parameter.length();
+            if (end == query.length() || !Character.isJavaIdentifierPart(query.charAt(end))) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Object> key(String query, List<Conditions> conditions, Sort sort, int positional, Set<String> named) {
+        List<Object> shapes = new ArrayList<>();
+        if (conditions != null) {
+            for (Conditions condition : conditions) {
+                if (condition == null) {
+                    shapes.add(null);
+                    continue;
+                }
+                Object value = condition.getValue();
+                Object another = condition.getAnotherValue();
+                shapes.add(Arrays.asList(condition.getProperty(), condition.getMatchType(), value == null ? null : value.getClass(),
+                        StringUtil.isBlank(value), sizeOf(value), another == null ? null : another.getClass()));
+            }
+        }
+        List<Object> orders = new ArrayList<>();
+        if (sort != null) {
+            Iterator<Sort.Order> it = sort.iterator();
+            while (it.hasNext()) {
+                Sort.Order order = it.next();
+                orders.add(Arrays.asList(order.getProperty(), order.isAscending()));
+            }
+        }
+        return Arrays.asList(query, shapes, orders, positional, named == null ? null : new HashSet<>(named));
+    }
+
+    private static int sizeOf(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        if (value != null && value.getClass().isArray()) {
+            return Array.getLength(value);
+        }
+        return -1;
+    }
+
+    private static Object elementAt(Object value, int index) {
+        if (value instanceof List) {
+            return ((List<?>) value).get(index);
+        }
+        if (value instanceof Collection) {
+            Iterator<?> it = ((Collection<?>) value).iterator();
+            for (int i = 0; i < index; i++) {
+                it.next();
+            }
+            return it.next();
+        }
+        return Array.get(value, index);
+    }
+
+    /**
+     * 拼接动态条件后的语句
+     */
+    public static class Rewrite {
+
+        private final String query;
+
+        private final String pagedQuery;
+
+        private final List<Step> steps;
+
+        private final Map<String, Step> namedSteps;
+
+        @SuppressWarnings("unchecked")
+        private Rewrite(String query, String pagedQuery, Object steps) {
+            this.query = query;
+            this.pagedQuery = pagedQuery;
+            this.steps = steps instanceof List ? (List<Step>) steps : null;
+            this.namedSteps = steps instanceof Map ? (Map<String, Step>) steps : null;
+        }
+
+        private boolean isSupported() {
+            return steps != null || namedSteps != null;
+        }
+
+        /**
+         * @return 拼接动态条件后的语句
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return 拼接动态条件及order by后的语句
+         */
+        public String getPagedQuery() {
+            return pagedQuery;
+        }
+    }
+
+    /**
+     * 绑定计划中的一个参数
+     */
+    private static class Step {
+
+        static final int ORIGINAL = 0, VALUE = 1, ANOTHER = 2, ELEMENT = 3, TEXT = 4;
+
+        final int kind;
+
+        final int index;
+
+        final int element;
+
+        final String prefix;
+
+        final String suffix;
+
+        Step(int kind, int index, int element, String prefix, String suffix) {
+            this.kind = kind;
+            this.index = index;
+            this.element = element;
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        Object resolve(Object[] originals, List<Conditions> conditions) {
+            switch (kind) {
+                case ORIGINAL:
+                    return originals[index];
+                case VALUE:
+                    return conditions.get(index).getValue();
+                case ANOTHER:
+                    return conditions.get(index).getAnotherValue();
+                case ELEMENT:
+                    return elementAt(conditions.get(index).getValue(), element);
+                default:
+                    return prefix + conditions.get(index).getValue() + suffix;
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package cn.wuxia.common.hibernate.dao;
+
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.Sort;
+import cn.wuxia.common.util.StringUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.springframework.util.Assert;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * DAO层使用的实体元数据，每个SessionFactory在DAO设置SessionFactory时由hibernate的metamodel一次性构建，
+ * 之后id名称、属性类型、是否实体等直接从内存读取，不再每次查询ClassMetadata或注解。
+ *
+ * @author songlin
+ */
+public class EntityMetadataRegistry {
+
+    private static final Pattern PROPERTY_PATH = Pattern.compile("[A-Za-z_$][\\w$]*(\\.[A-Za-z_$][\\w$]*)*");
+
+    private static final Map<SessionFactory, EntityMetadataRegistry> REGISTRIES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final Map<Class<?>, EntityMetadata> entities;
+
+    /**
+     * 非实体类（DTO）是否为实体的缓存
+     */
+    private final ConcurrentMap<Class<?>, Boolean> entityClasses = new ConcurrentHashMap<>();
+
+    private EntityMetadataRegistry(SessionFactoryImplementor sessionFactory) {
+        Map<Class<?>, EntityMetadata> entities = new HashMap<>();
+        for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+            Class<?> mappedClass = persister.getMappedClass();
+            if (mappedClass != null && !entities.containsKey(mappedClass)) {
+                entities.put(mappedClass, new EntityMetadata(mappedClass, persister));
+            }
+        }
+        this.entities = Collections.unmodifiableMap(entities);
+    }
+
+    /**
+     * 获取SessionFactory的实体元数据，同一个SessionFactory只构建一次
+     *
+     * @param sessionFactory
+     * @return
+     */
+    public static EntityMetadataRegistry of(SessionFactory sessionFactory) {
+        Assert.notNull(sessionFactory, "sessionFactory can not be null");
+        EntityMetadataRegistry registry = REGISTRIES.get(sessionFactory);
+        if (registry == null) {
+            synchronized (REGISTRIES) {
+                registry = REGISTRIES.get(sessionFactory);
+                if (registry == null) {
+                    registry = new EntityMetadataRegistry(sessionFactory.unwrap(SessionFactoryImplementor.class));
+                    REGISTRIES.put(sessionFactory, registry);
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * @param entityClass
+     * @return 不是映射的实体时返回null
+     */
+    public EntityMetadata get(Class<?> entityClass) {
+        return entities.get(entityClass);
+    }
+
+    /**
+     * @param entityClass
+     * @return
+     * @throws IllegalArgumentException 不是映射的实体
+     */
+    public EntityMetadata getRequired(Class<?> entityClass) {
+        EntityMetadata metadata = entities.get(entityClass);
+        Assert.notNull(metadata, "not a mapped entity: " + entityClass);
+        return metadata;
+    }
+
+    /**
+     * 是否实体类（映射的实体或带有{@link Entity}注解），否则为DTO
+     *
+     * @param clazz
+     * @return
+     */
+    public boolean isEntity(Class<?> clazz) {
+        if (clazz == null) {
+            return false;
+        }
+        if (entities.containsKey(clazz)) {
+            return true;
+        }
+        return entityClasses.computeIfAbsent(clazz, c -> c.isAnnotationPresent(Entity.class));
+    }
+
+    public Set<Class<?>> getEntityClasses() {
+        return entities.keySet();
+    }
+
+    /**
+     * 实体的元数据
+     */
+    public static class EntityMetadata {
+
+        private final Class<?> entityClass;
+
+        private final String entityName;
+
+        private final String idName;
+
+        private final Class<?> idType;
+
+        /**
+         * 映射的属性（含id）及类型
+         */
+        private final Map<String, Class<?>> properties;
+
+        /**
+         * 可排序的属性：id及非集合属性
+         */
+        private final Set<String> sortableProperties;
+
+        /**
+         * 有索引的属性：id、唯一列、@Table中索引的第一列及多对一的外键
+         */
+        private final Set<String> indexedProperties;
+
+        EntityMetadata(Class<?> entityClass, EntityPersister persister) {
+            this.entityClass = entityClass;
+            this.entityName = persister.getEntityName();
+            this.idName = persister.getIdentifierPropertyName();
+            this.idType = persister.getIdentifierType() != null ? persister.getIdentifierType().getReturnedClass() : null;
+            Map<String, Class<?>> properties = new LinkedHashMap<>();
+            Set<String> sortable = new LinkedHashSet<>();
+            Set<String> indexed = new LinkedHashSet<>();
+            if (idName != null) {
+                properties.put(idName, idType);
+                sortable.add(idName);
+                indexed.add(idName);
+            }
+            Set<String> indexColumns = indexColumns(entityClass);
+            String[] names = persister.getPropertyNames();
+            Type[] types = persister.getPropertyTypes();
+            for (int i = 0; i < names.length; i++) {
+                properties.put(names[i], types[i].getReturnedClass());
+                if (types[i].isCollectionType()) {
+                    continue;
+                }
+                sortable.add(names[i]);
+                if (types[i].isEntityType() || isUnique(entityClass, names[i])) {
+                    indexed.add(names[i]);
+                } else if (persister instanceof AbstractEntityPersister) {
+                    String[] columns = ((AbstractEntityPersister) persister).getPropertyColumnNames(names[i]);
+                    if (columns != null && columns.length > 0 && columns[0] != null && indexColumns.contains(unquote(columns[0]))) {
+                        indexed.add(names[i]);
+                    }
+                }
+            }
+            this.properties = Collections.unmodifiableMap(properties);
+            this.sortableProperties = Collections.unmodifiableSet(sortable);
+            this.indexedProperties = Collections.unmodifiableSet(indexed);
+        }
+
+        private static Set<String> indexColumns(Class<?> entityClass) {
+            Set<String> columns = new HashSet<>();
+            for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                Table table = clazz.getAnnotation(Table.class);
+                if (table == null) {
+                    continue;
+                }
+                for (Index index : table.indexes()) {
+                    String first = StringUtils.trim(index.columnList().split(",")[0]).split("\\s+")[0];
+                    columns.add(unquote(first));
+                }
+            }
+            return columns;
+        }
+
+        private static boolean isUnique(Class<?> entityClass, String property) {
+            for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                try {
+                    Field field = clazz.getDeclaredField(property);
+                    Column column = field.getAnnotation(Column.class);
+                    return column != null && column.unique();
+                } catch (NoSuchFieldException e) {
+                    // 在父类中查找
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 只检查普通的属性路径，其他写法（如多个属性的组合）交给查询本身处理
+         */
+        private static boolean isPropertyPath(String property) {
+            return property != null && PROPERTY_PATH.matcher(property).matches();
+        }
+
+        private static String unquote(String column) {
+            return StringUtils.strip(column, "`\"[]").toLowerCase();
+        }
+
+        public Class<?> getEntityClass() {
+            return entityClass;
+        }
+
+        public String getEntityName() {
+            return entityName;
+        }
+
+        public String getIdName() {
+            return idName;
+        }
+
+        public Class<?> getIdType() {
+            return idType;
+        }
+
+        public Map<String, Class<?>> getProperties() {
+            return properties;
+        }
+
+        public Set<String> getSortableProperties() {
+            return sortableProperties;
+        }
+
+        public Set<String> getIndexedProperties() {
+            return indexedProperties;
+        }
+
+        /**
+         * @param property
+         * @return 属性的类型，不是映射的属性时返回null
+         */
+        public Class<?> getPropertyType(String property) {
+            return properties.get(property);
+        }
+
+        public boolean isSortable(String property) {
+            return sortableProperties.contains(property);
+        }
+
+        public boolean isIndexed(String property) {
+            return indexedProperties.contains(property);
+        }
+
+        /**
+         * 检查排序字段是否为可排序的属性，带"."的属性只检查第一段
+         *
+         * @param sort
+         * @throws IllegalArgumentException 属性不存在或不能排序
+         */
+        public void validate(Sort sort) {
+            if (sort == null) {
+                return;
+            }
+            Iterator<Sort.Order> it = sort.iterator();
+            while (it.hasNext()) {
+                String property = it.next().getProperty();
+                if (!isPropertyPath(property)) {
+                    continue;
+                }
+                String first = StringUtils.substringBefore(property, ".");
+                Assert.isTrue(property.indexOf('.') > 0 ? properties.containsKey(first) : sortableProperties.contains(property),
+                        "invalid sort property [" + property + "] of " + entityName);
+            }
+        }
+
+        /**
+         * 检查条件的属性是否存在，带"."的属性只检查第一段
+         *
+         * @param conditions
+         * @throws IllegalArgumentException 属性不存在
+         */
+        public void validate(Conditions... conditions) {
+            if (conditions == null) {
+                return;
+            }
+            for (Conditions condition : conditions) {
+                if (condition == null || StringUtil.isBlank(condition.getProperty())) {
+                    continue;
+                }
+                String property = condition.getProperty();
+                if (!isPropertyPath(property)) {
+                    continue;
+                }
+                Assert.isTrue(properties.containsKey(StringUtils.substringBefore(property, ".")),
+                        "invalid condition property [" + property + "] of " + entityName);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package cn.wuxia.common.hibernate.dao;
+
+import org.hibernate.transform.ResultTransformer;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 将查询结果的每一行转换为{@link Map}，代替{@link org.hibernate.transform.Transformers#ALIAS_TO_ENTITY_MAP}。
+ * 同一个结果集共用一份别名到下标的索引，每行只保存自己的Object[]，不再为每行分配HashMap及其Entry。
+ * 行的Map可以修改，put已有的别名直接写入该行，新增或删除别名时才复制为普通的Map；序列化时转换为{@link LinkedHashMap}。
+ * 遍历顺序为查询的列顺序，别名重复时以最后一列为准，与ALIAS_TO_ENTITY_MAP一致。
+ *
+ * @author songlin
+ */
+public class RowMapTransformer implements ResultTransformer {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient String[] lastAliases;
+
+    private transient Columns lastColumns;
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        Columns columns = lastColumns;
+        if (columns == null || (aliases != lastAliases && !Arrays.equals(aliases, lastAliases))) {
+            columns = new Columns(aliases);
+            lastColumns = columns;
+            lastAliases = aliases;
+        }
+        return new RowMap(columns, tuple);
+    }
+
+    @Override
+    public List transformList(List collection) {
+        return collection;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o != null && getClass() == o.getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return RowMapTransformer.class.hashCode();
+    }
+
+    /**
+     * 结果集共用的别名索引
+     */
+    static final class Columns {
+
+        private final String[] keys;
+
+        private final int[] positions;
+
+        private final Map<String, Integer> index;
+
+        Columns(String[] aliases) {
+            Map<String, Integer> index = new LinkedHashMap<>(aliases.length * 2);
+            for (int i = 0; i < aliases.length; i++) {
+                if (aliases[i] != null) {
+                    index.remove(aliases[i]);
+                    index.put(aliases[i], i);
+                }
+            }
+            this.keys = new String[index.size()];
+            this.positions = new int[index.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : index.entrySet()) {
+                keys[i] = entry.getKey();
+                positions[i++] = entry.getValue();
+            }
+            this.index = index;
+        }
+
+        int positionOf(Object key) {
+            Integer position = index.get(key);
+            return position == null ? -1 : position;
+        }
+    }
+
+    /**
+     * 以Object[]保存一行数据的Map
+     */
+    static final class RowMap extends AbstractMap<String, Object> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Columns columns;
+
+        private final Object[] values;
+
+        /**
+         * 新增或删除别名后的完整数据，不为空时不再使用values
+         */
+        private Map<String, Object> overflow;
+
+        private transient Set<Map.Entry<String, Object>> entrySet;
+
+        RowMap(Columns columns, Object[] values) {
+            this.columns = columns;
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return overflow != null ? overflow.size() : columns.keys.length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return overflow != null ? overflow.containsKey(key) : columns.positionOf(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (overflow != null) {
+                return overflow.get(key);
+            }
+            int position = columns.positionOf(key);
+            return position < 0 ? null : values[position];
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            if (overflow == null) {
+                int position = columns.positionOf(key);
+                if (position >= 0) {
+                    Object old = values[position];
+                    values[position] = value;
+                    return old;
+                }
+                overflow = new LinkedHashMap<>(this);
+            }
+            return overflow.put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            if (overflow == null) {
+                if (columns.positionOf(key) < 0) {
+                    return null;
+                }
+                overflow = new LinkedHashMap<>(this);
+            }
+            return overflow.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            overflow = new LinkedHashMap<>();
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            Set<Map.Entry<String, Object>> set = entrySet;
+            if (set == null) {
+                set = new AbstractSet<Map.Entry<String, Object>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, Object>> iterator() {
+                        return overflow != null ? overflow.entrySet().iterator() : new RowIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return RowMap.this.size();
+                    }
+                };
+                entrySet = set;
+            }
+            return set;
+        }
+
+        private Object writeReplace() {
+            return new LinkedHashMap<>(this);
+        }
+
+        private final class RowIterator implements Iterator<Map.Entry<String, Object>> {
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return overflow == null && next < columns.keys.length;
+            }
+
+            @Override
+            public Map.Entry<String, Object> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int i = next++;
+                return new Map.Entry<String, Object>() {
+                    @Override
+                    public String getKey() {
+                        return columns.keys[i];
+                    }
+
+                    @Override
+                    public Object getValue() {
+                        return values[columns.positions[i]];
+                    }
+
+                    @Override
+                    public Object setValue(Object value) {
+                        Object old = values[columns.positions[i]];
+                        values[columns.positions[i]] = value;
+                        return old;
+                    }
+
+                    @Override
+                    public boolean equals(Object o) {
+                        if (!(o instanceof Map.Entry)) {
+                            return false;
+                        }
+                        Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                        return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+                    }
+
+                    @Override
+                    public int hashCode() {
+                        return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+                    }
+
+                    @Override
+                    public String toString() {
+                        return getKey() + "=" + getValue();
+                    }
+                };
+            }
+        }
+    }
+}
@@ -9,28 +9,58 @@ import cn.wuxia.common.util.ArrayUtil;
 import cn.wuxia.common.util.ListUtil;
 import cn.wuxia.common.util.MapUtil;
 import cn.wuxia.common.util.reflection.ReflectionUtil;
+import org.hibernate.Cache;
 import org.hibernate.Criteria;
 import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.annotations.SQLDelete;
+import org.hibernate.annotations.SQLDeleteAll;
+import org.hibernate.annotations.Where;
 import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
-import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.internal.PostDeleteEventListenerStandardImpl;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
 import org.hibernate.query.Query;
 import org.hibernate.query.criteria.internal.OrderImpl;
+import org.hibernate.type.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 
+import javax.persistence.EntityListeners;
+import javax.persistence.PostRemove;
+import javax.persistence.PreRemove;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.io.Serializable;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 /**
  * Package Hibernate native API the DAO generic base class. Direct use in the
@@ -51,6 +81,26 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
 
     protected Class<T> entityClass;
 
+    /**
+     * 默认单次批量操作的数目
+     */
+    public static final int DEFAULT_BATCH_SIZE = 30;
+
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * 单个in条件默认最多的参数个数，dialect有更小的限制时以dialect为准
+     */
+    public static final int DEFAULT_IN_CLAUSE_SIZE = 1000;
+
+    private Boolean directDeleteSupported;
+
+    protected CountCache countCache;
+
+    private final ThreadLocal<Session> boundSession = new ThreadLocal<>();
+
+    private volatile EntityMetadataRegistry metadataRegistry;
+
     /**
      * Dao layer subclass constructor for object type class defined by the
      * generic subclass. eg. public class UserDao extends
@@ -70,6 +120,7 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     public SimpleHibernateDao(final SessionFactory sessionFactory, final Class<T> entityClass) {
         this.sessionFactory = sessionFactory;
         this.entityClass = entityClass;
+        this.metadataRegistry = sessionFactory == null ? null : EntityMetadataRegistry.of(sessionFactory);
     }
 
     /**
@@ -87,13 +138,70 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     @Autowired
     protected void setSessionFactory(final SessionFactory sessionFactory) {
         this.sessionFactory = sessionFactory;
+        this.metadataRegistry = sessionFactory == null ? null : EntityMetadataRegistry.of(sessionFactory);
     }
 
     /**
-     * @description : get the current Session.
+     * @description : get the current Session, or the session bound by
+     * {@link #doInSession(Session, Supplier)} in this thread.
      */
     public Session getSession() {
-        return sessionFactory.getCurrentSession();
+        Session session = boundSession.get();
+        return session != null ? session : sessionFactory.getCurrentSession();
+    }
+
+    /**
+     * @description : run the action with the given session as the current
+     * session of this dao in this thread, eg. queries in other threads.
+     */
+    protected <X> X doInSession(final Session session, final Supplier<X> action) {
+        boundSession.set(session);
+        try {
+            return action.get();
+        } finally {
+            boundSession.remove();
+        }
+    }
+
+    /**
+     * @description : get the count cache of paging query, null if disabled.
+     */
+    public CountCache getCountCache() {
+        return countCache;
+    }
+
+    /**
+     * @description : set the count cache of paging query, shared by all dao
+     * when it is declared as a spring bean.
+     */
+    @Autowired(required = false)
+    public void setCountCache(CountCache countCache) {
+        this.countCache = countCache;
+    }
+
+    /**
+     * @description : invalidate the cached counts of the entity after writing,
+     * after commit if in a spring transaction.
+     */
+    protected void invalidateCountCache() {
+        if (countCache != null) {
+            countCache.invalidateAfterCommit(entityClass);
+        }
+    }
+
+    /**
+     * @description : get the jdbc batch size of batch operation.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @description : set the jdbc batch size of batch operation.
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        this.batchSize = batchSize;
     }
 
     /**
@@ -102,39 +210,210 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     public void save(final T entity) {
         Assert.notNull(entity, "entity Can not be null");
         getSession().saveOrUpdate(entity);
+        invalidateCountCache();
         if (logger.isDebugEnabled()) {
             logger.debug("save entity: {}", entity);
         }
     }
 
     /**
-     * 批量操作
+     * 批量操作，每批次数目为{@link #getBatchSize()}
      *
      * @param entitys
      * @author songlin
      */
     public void batchSave(final Collection<T> entitys) {
+        batchSave(entitys, getBatchSize());
+    }
+
+    /**
+     * 批量操作，每batchSize条记录flush一次，每次flush对应一个jdbc batch。
+     * 执行期间session的jdbc batch size临时设置为batchSize，结束后恢复。
+     * 本方法不对实体重新排序：flush时由hibernate的ActionQueue先执行全部insert再执行update，同一批次同类语句合并为一个batch；
+     * 如实体映射到多张表（继承、secondary table），需开启hibernate.order_inserts及hibernate.order_updates按表归并。
+     * 注意：使用IDENTITY主键生成策略的实体，insert会在saveOrUpdate时立即执行，无法合并批次。
+     *
+     * @param entitys
+     * @param batchSize 单次批量操作的数目
+     * @return 每个批次flush的实体数，即传入saveOrUpdate的数目，并非jdbc返回的影响行数（hibernate不对外提供batch的update count），
+     * 级联写入的关联实体不计入
+     * @author songlin
+     */
+    public int[] batchSave(final Collection<T> entitys, final int batchSize) {
         Assert.notEmpty(entitys, "entity Can not be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
         /**
          * java.lang.IllegalStateException: Transaction already active
          */
-//        Transaction tx = getSession().beginTransaction();
-        int i = 0;
-        for (T entity : entitys) {
-            getSession().saveOrUpdate(entity);
-            if (i % 30 == 0) { //单次批量操作的数目为30
-                getSession().flush(); //清理缓存，执行批量插入20条记录的SQL insert语句
-                getSession().clear(); //清空缓存中的对象
+        Session session = getSession();
+        Integer orgBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        int[] rows = new int[(entitys.size() + batchSize - 1) / batchSize];
+        try {
+            int i = 0;
+            for (T entity : entitys) {
+                session.saveOrUpdate(entity);
+                if (++i % batchSize == 0) {
+                    session.flush(); //清理缓存，执行一个批次的SQL语句
+                    session.clear(); //清空缓存中的对象
+                    rows[i / batchSize - 1] = batchSize;
+                }
             }
-            i++;
+            if (i % batchSize != 0) {
+                session.flush();
+                session.clear();
+                rows[rows.length - 1] = i % batchSize;
+            }
+        } finally {
+            session.setJdbcBatchSize(orgBatchSize);
+            invalidateCountCache();
         }
+        if (logger.isDebugEnabled()) {
+            logger.debug("batch save {} entity in {} batches, batch size: {}", entitys.size(), rows.length, batchSize);
+        }
+        return rows;
+    }
+
+    /**
+     * StatelessSession批量新增，不经过一级缓存、脏检查及级联，内存占用与写入数量无关
+     *
+     * @param entitys
+     * @return 写入的记录数
+     * @author songlin
+     */
+    public int statelessInsert(final Collection<T> entitys) {
+        Assert.notNull(entitys, "entitys Can not be null");
+        return statelessInsert(entitys.iterator());
+    }
+
+    /**
+     * @param entitys
+     * @return 写入的记录数
+     * @see #statelessInsert(Collection)
+     */
+    public int statelessInsert(final Iterator<T> entitys) {
+        return statelessWrite(entitys, (stateless, batch) -> batch.forEach(stateless::insert));
+    }
+
+    /**
+     * StatelessSession批量修改，实体必须带有id
+     *
+     * @param entitys
+     * @return 写入的记录数
+     * @author songlin
+     */
+    public int statelessUpdate(final Collection<T> entitys) {
+        Assert.notNull(entitys, "entitys Can not be null");
+        return statelessUpdate(entitys.iterator());
+    }
+
+    /**
+     * @param entitys
+     * @return 写入的记录数
+     * @see #statelessUpdate(Collection)
+     */
+    public int statelessUpdate(final Iterator<T> entitys) {
+        return statelessWrite(entitys, (stateless, batch) -> batch.forEach(stateless::update));
+    }
+
+    /**
+     * StatelessSession批量删除，实体必须带有id
+     *
+     * @param entitys
+     * @return 删除的记录数
+     * @author songlin
+     */
+    public int statelessDelete(final Collection<T> entitys) {
+        Assert.notNull(entitys, "entitys Can not be null");
+        return statelessDelete(entitys.iterator());
+    }
+
+    /**
+     * @param entitys
+     * @return 删除的记录数
+     * @see #statelessDelete(Collection)
+     */
+    public int statelessDelete(final Iterator<T> entitys) {
+        return statelessWrite(entitys, (stateless, batch) -> batch.forEach(stateless::delete));
+    }
+
+    /**
+     * StatelessSession批量新增或修改，每个批次以一条id in查询判断记录是否已存在，
+     * id为空或不存在的执行insert，其余执行update
+     *
+     * @param entitys
+     * @return 写入的记录数
+     * @author songlin
+     */
+    public int statelessUpsert(final Collection<T> entitys) {
+        Assert.notNull(entitys, "entitys Can not be null");
+        return statelessUpsert(entitys.iterator());
+    }
+
+    /**
+     * @param entitys
+     * @return 写入的记录数
+     * @see #statelessUpsert(Collection)
+     */
+    public int statelessUpsert(final Iterator<T> entitys) {
+        final String hql = "select e." + getIdName() + " from " + entityClass.getName() + " e where e." + getIdName() + " in (:ids)";
+        return statelessWrite(entitys, (stateless, batch) -> {
+            Map<T, Serializable> ids = new IdentityHashMap<>(batch.size());
+            for (T entity : batch) {
+                Serializable id = (Serializable) getSessionFactory().getPersistenceUnitUtil().getIdentifier(entity);
+                if (id != null) {
+                    ids.put(entity, id);
+                }
+            }
+            Set<Serializable> exists = new HashSet<>();
+            if (!ids.isEmpty()) {
+                exists.addAll(stateless.createQuery(hql).setParameterList("ids", new HashSet<>(ids.values())).list());
+            }
+            for (T entity : batch) {
+                if (exists.contains(ids.get(entity))) {
+                    stateless.update(entity);
+                } else {
+                    stateless.insert(entity);
+                }
+            }
+        });
+    }
+
+    /**
+     * 使用当前session的jdbc连接（因此参与当前事务）打开StatelessSession，
+     * 按{@link #getBatchSize()}分批回调，每批次结束执行jdbc batch，只持有当前批次的实体。
+     * StatelessSession不维护二级缓存，写入后清除该实体的缓存区域。
+     */
+    protected int statelessWrite(final Iterator<T> entitys, final BiConsumer<StatelessSession, List<T>> batchAction) {
+        Assert.notNull(entitys, "entitys Can not be null");
+        // 先把当前session中未提交的修改写入数据库，保证语句顺序与调用顺序一致
         getSession().flush();
-        getSession().clear();
-//        tx.commit();
-        //getSession().close();
+        int total = getSession().doReturningWork(connection -> {
+            StatelessSession stateless = getSessionFactory().openStatelessSession(connection);
+            try {
+                stateless.setJdbcBatchSize(getBatchSize());
+                List<T> batch = new ArrayList<>(getBatchSize());
+                int count = 0;
+                while (entitys.hasNext()) {
+                    batch.add(entitys.next());
+                    if (batch.size() == getBatchSize() || !entitys.hasNext()) {
+                        batchAction.accept(stateless, batch);
+                        ((SharedSessionContractImplementor) stateless).getJdbcCoordinator().executeBatch();
+                        count += batch.size();
+                        batch.clear();
+                    }
+                }
+                return count;
+            } finally {
+                stateless.close();
+            }
+        });
+        getSessionFactory().getCache().evictEntityRegion(entityClass);
+        invalidateCountCache();
         if (logger.isDebugEnabled()) {
-            logger.debug("save entity: {}", entitys);
+            logger.debug("stateless write {} entity", total);
         }
+        return total;
     }
 
     /**
@@ -145,6 +424,7 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     public void merge(final T entity) {
         Assert.notNull(entity, "entity Can not be null");
         getSession().merge(entity);
+        invalidateCountCache();
         if (logger.isDebugEnabled()) {
             logger.debug("save entity: {}", entity);
         }
@@ -158,17 +438,76 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     public void delete(final T entity) {
         Assert.notNull(entity, "entity Can not be null");
         getSession().delete(entity);
+        invalidateCountCache();
         if (logger.isDebugEnabled()) {
             logger.debug("delete entity: {}", entity);
         }
     }
 
     /**
-     * @description : Delete an object by id.
+     * @description : Delete an object by id. If the object is not in the
+     * session and the entity has no cascades, collections,
+     * lifecycle callbacks or delete listeners, issue a direct
+     * DELETE without loading the object first, otherwise load
+     * and delete the object so cascades and listeners apply.
+     * Throws IllegalArgumentException if no row matches the id.
      */
     public void delete(final PK id) {
         Assert.notNull(id, "id Can not be null");
-        delete(get(id));
+        T entity = getManagedEntity(id);
+        if (entity == null && !isDirectDeleteSupported()) {
+            entity = get(id);
+            Assert.notNull(entity, entityClass.getSimpleName() + " not found, id: " + id);
+        }
+        if (entity != null) {
+            delete(entity);
+            return;
+        }
+        int rows = createQuery("delete from " + entityClass.getName() + " where " + getIdName() + " = :id",
+                Collections.singletonMap("id", id)).executeUpdate();
+        Assert.isTrue(rows > 0, entityClass.getSimpleName() + " not found, id: " + id);
+        invalidateCountCache();
+        if (logger.isDebugEnabled()) {
+            logger.debug("delete {} by id: {}, rows: {}", entityClass.getSimpleName(), id, rows);
+        }
+    }
+
+    /**
+     * 根据id批量删除，按数据库支持的in参数个数分批执行delete ... where id in (...)，
+     * bulk delete会清除该实体的二级缓存区域；已在session中的对象按普通方式删除。
+     * 实体带有级联、集合、生命周期回调或删除监听器时逐个加载后删除。
+     *
+     * @param ids
+     * @return 删除的记录数
+     * @author songlin
+     */
+    public int deleteByIds(final Collection<PK> ids) {
+        Assert.notNull(ids, "ids Can not be null");
+        int rows = 0;
+        List<PK> bulkIds = new ArrayList<>(ids.size());
+        for (PK id : new LinkedHashSet<>(ids)) {
+            T entity = getManagedEntity(id);
+            if (entity == null && !isDirectDeleteSupported()) {
+                entity = get(id);
+            }
+            if (entity != null) {
+                delete(entity);
+                rows++;
+            } else if (isDirectDeleteSupported()) {
+                bulkIds.add(id);
+            }
+        }
+        String hql = "delete from " + entityClass.getName() + " where " + getIdName() + " in (:ids)";
+        int chunkSize = getInClauseLimit();
+        for (int i = 0; i < bulkIds.size(); i += chunkSize) {
+            List<PK> chunk = bulkIds.subList(i, Math.min(i + chunkSize, bulkIds.size()));
+            rows += createQuery(hql, Collections.singletonMap("ids", chunk)).executeUpdate();
+        }
+        invalidateCountCache();
+        if (logger.isDebugEnabled()) {
+            logger.debug("delete {} by ids, rows: {}", entityClass.getSimpleName(), rows);
+        }
+        return rows;
     }
 
     /**
@@ -180,10 +519,59 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     }
 
     /**
-     * @description : Id list to get a list of objects.
+     * @description : Id list to get a list of objects, in the order of the
+     * ids, missing ids are skipped.
      */
     public List<T> get(final Collection<PK> ids) {
-        return findIn(getIdName(), ids);
+        return get(ids, false);
+    }
+
+    /**
+     * 根据id列表获取对象，按ids的顺序返回（重复的id只返回一次）。
+     * 先从session及二级缓存中获取，未命中的id按数据库支持的in参数个数分批加载。
+     *
+     * @param ids
+     * @param includeMissing true时不存在的id在对应位置返回null，false时忽略
+     * @return
+     * @author songlin
+     */
+    public List<T> get(final Collection<PK> ids, final boolean includeMissing) {
+        Assert.notNull(ids, "ids Can not be null");
+        Set<PK> distinctIds = new LinkedHashSet<>(ids);
+        distinctIds.remove(null);
+        Map<PK, T> loaded = new HashMap<>();
+        List<PK> misses = new ArrayList<>();
+        Cache cache = getSessionFactory().getCache();
+        for (PK id : distinctIds) {
+            T entity = getManagedEntity(id);
+            if (entity == null && cache.containsEntity(entityClass, id)) {
+                // served from the second-level cache without sql
+                entity = get(id);
+            }
+            if (entity != null) {
+                loaded.put(id, entity);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            List<T> result = getSession().byMultipleIds(entityClass).enableSessionCheck(false).enableOrderedReturn(true)
+                    .enableReturnOfDeletedEntities(false).withBatchSize(getInClauseLimit()).multiLoad(misses);
+            for (int i = 0; i < misses.size(); i++) {
+                loaded.put(misses.get(i), result.get(i));
+            }
+        }
+        List<T> list = new ArrayList<>(distinctIds.size());
+        for (PK id : distinctIds) {
+            T entity = loaded.get(id);
+            if (entity != null || includeMissing) {
+                list.add(entity);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("get {} by {} ids, {} loaded from database", entityClass.getSimpleName(), distinctIds.size(), misses.size());
+        }
+        return list;
     }
 
     /**
@@ -230,11 +618,22 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
      */
     public List<T> findIn(final String propertyName, final Collection<?> values) {
         Assert.hasText(propertyName, "propertyName Can not be null");
+        if (values.size() > getInClauseLimit()) {
+            if (isTemporaryTableSupported(propertyName)) {
+                return findByTemporaryTable(propertyName, values, true);
+            }
+            List<Object> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+            List<T> result = new ArrayList<>();
+            for (int i = 0; i < distinctValues.size(); i += getInClauseLimit()) {
+                result.addAll(findIn(propertyName, distinctValues.subList(i, Math.min(i + getInClauseLimit(), distinctValues.size()))));
+            }
+            return result;
+        }
         CriteriaQuery crq = createCriteriaQuery();
         Root<T> root = crq.from(entityClass);
         crq.select(root);
         CriteriaBuilder.In in = createCriteriaBuilder().in(root.get(propertyName));
-        values.forEach(value -> in.value(value));
+        padInValues(values).forEach(value -> in.value(value));
         crq.where(in);
         return find(crq);
     }
@@ -257,6 +656,8 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
     }
 
     /**
+     * 超过in参数个数限制时，MySQL使用临时表关联查询，其他数据库拆分为多个not in条件以and连接
+     *
      * @param propertyName
      * @param values
      * @return
@@ -266,12 +667,23 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
      */
     public List<T> findNotIn(final String propertyName, final Collection<?> values) {
         Assert.hasText(propertyName, "propertyName Can not be null");
+        if (values.size() > getInClauseLimit() && isTemporaryTableSupported(propertyName)) {
+            return findByTemporaryTable(propertyName, values, false);
+        }
+        CriteriaBuilder cb = createCriteriaBuilder();
         CriteriaQuery crq = createCriteriaQuery();
         Root<T> root = crq.from(entityClass);
         crq.select(root);
-        CriteriaBuilder.In in = createCriteriaBuilder().in(root.get(propertyName));
-        values.forEach(value -> in.value(value));
-        crq.where(createCriteriaBuilder().not(in));
+        List<Object> distinctValues = new ArrayList<>(new LinkedHashSet<>(values));
+        List<Predicate> predicates = new ArrayList<>();
+        int i = 0;
+        do {
+            CriteriaBuilder.In in = cb.in(root.get(propertyName));
+            padInValues(distinctValues.subList(i, Math.min(i + getInClauseLimit(), distinctValues.size()))).forEach(value -> in.value(value));
+            predicates.add(cb.not(in));
+            i += getInClauseLimit();
+        } while (i < distinctValues.size());
+        crq.where(predicates.toArray(new Predicate[0]));
         return find(crq);
     }
 
@@ -287,6 +699,129 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
         return findNotIn(propertyName, ListUtil.arrayToList(values));
     }
 
+    /**
+     * 将in条件的参数个数补齐到2的n次方（重复最后一个值），使不同长度的参数列表共用同一个查询计划
+     *
+     * @param values
+     * @return
+     * @author songlin
+     */
+    protected List<?> padInValues(final Collection<?> values) {
+        List<Object> padded = new ArrayList<>(values);
+        if (padded.isEmpty()) {
+            return padded;
+        }
+        int size = Integer.highestOneBit(padded.size());
+        if (size < padded.size()) {
+            size = Math.max(Math.min(size << 1, getInClauseLimit()), padded.size());
+        }
+        Object last = padded.get(padded.size() - 1);
+        while (padded.size() < size) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    /**
+     * 是否可以使用临时表关联查询代替in条件：目前仅支持MySQL的单表实体以及单字段属性，
+     * 关联查询为原生sql，有discriminator、{@link Where}或secondary table的实体仍拆分为多个hql条件
+     */
+    protected boolean isTemporaryTableSupported(final String propertyName) {
+        EntityPersister persister = getEntityPersister();
+        if (!(getDialect() instanceof MySQLDialect) || !(persister instanceof SingleTableEntityPersister) || hasWhereClause()) {
+            return false;
+        }
+        SingleTableEntityPersister singleTablePersister = (SingleTableEntityPersister) persister;
+        return singleTablePersister.getDiscriminatorColumnName() == null && singleTablePersister.getDiscriminatorFormulaTemplate() == null
+                && singleTablePersister.getTableSpan() == 1 && singleTablePersister.getPropertyColumnNames(propertyName).length == 1;
+    }
+
+    /**
+     * 将values以jdbc batch写入当前连接的临时表，再用in子查询（in=true）或not exists（in=false）关联查询，
+     * 避免超长的in参数列表，查询结束后删除临时表。临时表字段使用关联字段的collation，与in条件的比较规则一致
+     *
+     * @param propertyName
+     * @param values
+     * @param in           true: in, false: not in
+     * @return
+     * @author songlin
+     */
+    protected List<T> findByTemporaryTable(final String propertyName, final Collection<?> values, final boolean in) {
+        SingleTableEntityPersister persister = (SingleTableEntityPersister) getEntityPersister();
+        SessionImplementor session = (SessionImplementor) getSession();
+        String column = persister.getPropertyColumnNames(propertyName)[0];
+        Type type = persister.getPropertyType(propertyName);
+        long length = 255;
+        for (Object value : values) {
+            if (value instanceof CharSequence) {
+                length = Math.max(length, ((CharSequence) value).length());
+            }
+        }
+        String columnType = getDialect().getTypeName(type.sqlTypes(session.getFactory())[0], length, 19, 2);
+        String table = "ht_in_" + persister.getTableName().replaceAll("\\W", "");
+        session.doWork(connection -> {
+            String collation = getColumnCollation(connection, persister.getTableName(), column);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("drop temporary table if exists " + table);
+                statement.executeUpdate("create temporary table " + table + " (v " + columnType
+                        + (collation == null ? "" : " collate " + collation) + ")");
+            }
+            try (PreparedStatement ps = connection.prepareStatement("insert into " + table + " (v) values (?)")) {
+                int i = 0;
+                for (Object value : values) {
+                    type.nullSafeSet(ps, value, 1, session);
+                    ps.addBatch();
+                    if (++i % getInClauseLimit() == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+        });
+        try {
+            String sql = "select e.* from " + persister.getTableName() + " e where ";
+            if (in) {
+                sql += "e." + column + " in (select t.v from " + table + " t)";
+            } else {
+                sql += "e." + column + " is not null and not exists (select 1 from " + table + " t where t.v = e." + column + ")";
+            }
+            return getSession().createNativeQuery(sql, entityClass).addSynchronizedEntityClass(entityClass).list();
+        } finally {
+            session.doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("drop temporary table if exists " + table);
+                }
+            });
+        }
+    }
+
+    /**
+     * MySQL字段的collation，非字符类型的字段返回null
+     */
+    private static String getColumnCollation(final Connection connection, final String tableName, final String columnName) throws SQLException {
+        String table = tableName.replace("`", "");
+        String schema = null;
+        int dot = table.lastIndexOf('.');
+        if (dot > 0) {
+            schema = table.substring(0, dot);
+            table = table.substring(dot + 1);
+        }
+        String sql = "select collation_name from information_schema.columns where table_schema = "
+                + (schema == null ? "database()" : "?") + " and table_name = ? and column_name = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (schema != null) {
+                ps.setString(index++, schema);
+            }
+            ps.setString(index++, table);
+            ps.setString(index, columnName.replace("`", ""));
+            try (ResultSet rs = ps.executeQuery()) {
+                String collation = rs.next() ? rs.getString(1) : null;
+                return collation != null && collation.matches("\\w+") ? collation : null;
+            }
+        }
+    }
+
     /**
      * @description : Find a list of objects by attributes, matching equal find
      * only objects by attributes, matching equal.
@@ -343,7 +878,9 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
      * @description : Execute HQL bulk modify / delete operations.
      */
     protected int batchExecute(final String hql, final Object... values) {
-        return createQuery(hql, values).executeUpdate();
+        int result = createQuery(hql, values).executeUpdate();
+        invalidateCountCache();
+        return result;
     }
 
     /**
@@ -354,7 +891,9 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
      * @description : Execute HQL bulk modify / delete operations.
      */
     protected int batchExecute(final String hql, final Map<String, ?> values) {
-        return createQuery(hql, values).executeUpdate();
+        int result = createQuery(hql, values).executeUpdate();
+        invalidateCountCache();
+        return result;
     }
 
     /**
@@ -525,12 +1064,161 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
         return criteria;
     }
 
+    /**
+     * @description : Get the hibernate persister of the entity.
+     */
+    protected EntityPersister getEntityPersister() {
+        return ((SessionFactoryImplementor) getSessionFactory()).getMetamodel().entityPersister(entityClass);
+    }
+
+    /**
+     * @description : Get the dialect of the sessionFactory.
+     */
+    protected Dialect getDialect() {
+        return ((SessionFactoryImplementor) getSessionFactory()).getJdbcServices().getDialect();
+    }
+
+    /**
+     * @description : Max number of values in one in clause, limited by the
+     * dialect.
+     */
+    protected int getInClauseLimit() {
+        int limit = getDialect().getInExpressionCountLimit();
+        return limit > 0 ? Math.min(limit, DEFAULT_IN_CLAUSE_SIZE) : DEFAULT_IN_CLAUSE_SIZE;
+    }
+
+    /**
+     * @description : Get the object by id from the current session only,
+     * return null if it is not in the session or has been deleted.
+     */
+    protected T getManagedEntity(final PK id) {
+        SessionImplementor session = (SessionImplementor) getSession();
+        PersistenceContext context = session.getPersistenceContext();
+        Object entity = context.getEntity(session.generateEntityKey(id, getEntityPersister()));
+        if (entity == null) {
+            return null;
+        }
+        EntityEntry entry = context.getEntry(entity);
+        if (entry != null && (entry.getStatus() == Status.DELETED || entry.getStatus() == Status.GONE)) {
+            return null;
+        }
+        return (T) entity;
+    }
+
+    /**
+     * @description : Whether the entity can be deleted by a direct DELETE
+     * statement without loading it: no cascades, no collections,
+     * no JPA lifecycle callbacks, no delete event listeners, no
+     * custom delete sql (@SQLDelete soft delete) and no @Where.
+     */
+    protected boolean isDirectDeleteSupported() {
+        if (directDeleteSupported == null) {
+            EntityPersister persister = getEntityPersister();
+            boolean supported = !persister.hasCascades() && !persister.hasCollections() && !hasCustomDeleteSql(persister)
+                    && !hasWhereClause();
+            for (Class<?> clazz = entityClass; supported && clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                if (clazz.isAnnotationPresent(EntityListeners.class) || clazz.isAnnotationPresent(SQLDelete.class)
+                        || clazz.isAnnotationPresent(SQLDeleteAll.class)) {
+                    supported = false;
+                }
+                for (Method method : clazz.getDeclaredMethods()) {
+                    if (method.isAnnotationPresent(PreRemove.class) || method.isAnnotationPresent(PostRemove.class)) {
+                        supported = false;
+                    }
+                }
+            }
+            if (supported) {
+                EventListenerRegistry registry = ((SessionFactoryImplementor) getSessionFactory()).getServiceRegistry()
+                        .getService(EventListenerRegistry.class);
+                supported = registry.getEventListenerGroup(EventType.DELETE).count() <= 1
+                        && registry.getEventListenerGroup(EventType.PRE_DELETE).isEmpty()
+                        && hasOnlyStandardListeners(registry.getEventListenerGroup(EventType.POST_DELETE))
+                        && registry.getEventListenerGroup(EventType.POST_COMMIT_DELETE).isEmpty();
+            }
+            directDeleteSupported = supported;
+        }
+        return directDeleteSupported;
+    }
+
+    /**
+     * @description : Whether the persister uses delete sql other than the
+     * generated one (@SQLDelete, sql-delete in hbm.xml).
+     */
+    private static boolean hasCustomDeleteSql(EntityPersister persister) {
+        if (!(persister instanceof AbstractEntityPersister)) {
+            return true;
+        }
+        AbstractEntityPersister aep = (AbstractEntityPersister) persister;
+        String[] deleteStrings = aep.getSQLDeleteStrings();
+        for (int i = 0; i < deleteStrings.length; i++) {
+            if (aep.isDeleteCallable(i) || !deleteStrings[i].equals(aep.generateDeleteString(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @description : Whether the entity class or a super class declares
+     * {@link Where}, which direct sql and bulk statements ignore.
+     */
+    protected boolean hasWhereClause() {
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            if (clazz.isAnnotationPresent(Where.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @description : PostDeleteEventListenerStandardImpl is always registered
+     * to invoke JPA @PostRemove callbacks, which are checked on
+     * the entity class itself.
+     */
+    private static boolean hasOnlyStandardListeners(EventListenerGroup<?> group) {
+        for (Object listener : group.listeners()) {
+            if (!(listener instanceof PostDeleteEventListenerStandardImpl)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @description : Get the entity metadata registry of the sessionFactory,
+     * built when the sessionFactory is set and shared by all dao of the same sessionFactory,
+     * or built from {@link #getSessionFactory()} on first use when a subclass provides it otherwise.
+     */
+    protected EntityMetadataRegistry getEntityMetadataRegistry() {
+        EntityMetadataRegistry registry = metadataRegistry;
+        if (registry == null) {
+            registry = EntityMetadataRegistry.of(getSessionFactory());
+            metadataRegistry = registry;
+        }
+        return registry;
+    }
+
+    /**
+     * @description : Get the metadata of the entity.
+     */
+    protected EntityMetadataRegistry.EntityMetadata getEntityMetadata() {
+        return getEntityMetadataRegistry().getRequired(entityClass);
+    }
+
+    /**
+     * @description : Whether the class is a mapped entity, otherwise it is
+     * a DTO.
+     */
+    protected boolean isEntityClass(final Class<?> clazz) {
+        return getEntityMetadataRegistry().isEntity(clazz);
+    }
+
     /**
      * @description : Get the primary key of the object name.
      */
     public String getIdName() {
-        ClassMetadata meta = getSessionFactory().getClassMetadata(entityClass);
-        return meta.getIdentifierPropertyName();
+        return getEntityMetadata().getIdName();
     }
 
     /**
@@ -543,7 +1231,20 @@ public class SimpleHibernateDao<T, PK extends Serializable> {
         if (newValue == null || newValue.equals(oldValue)) {
             return true;
         }
-        Object object = findUniqueBy(propertyName, newValue);
-        return (object == null);
+        return !existsBy(propertyName, newValue);
+    }
+
+    /**
+     * @description : Whether an object with the property value exists, only
+     * a constant of one row is selected instead of loading the entity.
+     */
+    public boolean existsBy(final String propertyName, final Object value) {
+        Assert.hasText(propertyName, "propertyName Can not be null");
+        CriteriaBuilder builder = createCriteriaBuilder();
+        CriteriaQuery<Integer> crq = builder.createQuery(Integer.class);
+        Root<T> root = crq.from(entityClass);
+        crq.select(builder.literal(1));
+        crq.where(value == null ? builder.isNull(root.get(propertyName)) : builder.equal(root.get(propertyName), value));
+        return !getSession().createQuery(crq).setMaxResults(1).list().isEmpty();
     }
 }
@@ -2,6 +2,9 @@ package cn.wuxia.common.hibernate.dao;
 
 import cn.wuxia.common.exception.AppServiceException;
 import cn.wuxia.common.hibernate.ConditionsSpecification;
+import cn.wuxia.common.hibernate.EnhancementDialect;
+import cn.wuxia.common.hibernate.EnhancementMySQL8Dialect;
+import cn.wuxia.common.hibernate.Keyset;
 import cn.wuxia.common.hibernate.Specifications;
 import cn.wuxia.common.orm.PageSQLHandler;
 import cn.wuxia.common.orm.query.*;
@@ -13,8 +16,14 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.*;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.internal.CriteriaImpl;
 import org.hibernate.query.NativeQuery;
 import org.hibernate.query.Query;
@@ -22,17 +31,39 @@ import org.hibernate.query.criteria.internal.OrderImpl;
 import org.hibernate.query.internal.NativeQueryImpl;
 import org.hibernate.transform.ResultTransformer;
 import org.hibernate.transform.Transformers;
+import org.hibernate.type.LongType;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
-import javax.persistence.Entity;
+import javax.persistence.Tuple;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.beans.PropertyDescriptor;
 import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Package SpringSide extension of a Hibernate DAO generic base class extended
@@ -65,6 +96,168 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         super(sessionFactory, entityClass);
     }
 
+    /**
+     * 流式查询默认的jdbc fetch size
+     */
+    public static final int DEFAULT_STREAM_FETCH_SIZE = 500;
+
+    /**
+     * sql分页查询中 count(*) over() 列的别名
+     */
+    public static final String WINDOW_COUNT_ALIAS = "total__count";
+
+    /**
+     * 流式查询的jdbc fetch size，MySQL设置为{@link Integer#MIN_VALUE}时逐行读取结果集
+     */
+    protected int streamFetchSize = DEFAULT_STREAM_FETCH_SIZE;
+
+    /**
+     * 流式查询每读取多少个实体从session中清除一次已读取的实体
+     */
+    protected int streamEvictSize = DEFAULT_STREAM_FETCH_SIZE;
+
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    public void setStreamFetchSize(int streamFetchSize) {
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    public int getStreamEvictSize() {
+        return streamEvictSize;
+    }
+
+    public void setStreamEvictSize(int streamEvictSize) {
+        Assert.isTrue(streamEvictSize > 0, "streamEvictSize must be greater than 0");
+        this.streamEvictSize = streamEvictSize;
+    }
+
+    /**
+     * 最多缓存的查询形状个数
+     */
+    private static final int MAX_COMPILED_QUERIES = 256;
+
+    /**
+     * 由Conditions构建的查询是否按查询形状编译为hql并缓存，关闭时每次构建CriteriaQuery
+     */
+    protected boolean compileCriteriaQuery = true;
+
+    private final ConcurrentMap<String, CompiledCriteriaQuery> compiledQueries = new ConcurrentHashMap<>();
+
+    /**
+     * DTO投影查询的属性
+     */
+    private final ConcurrentMap<Class<?>, String[]> projectionProperties = new ConcurrentHashMap<>();
+
+    /**
+     * {@link #findPage(Pages)}是否默认使用先查id的分页
+     *
+     * @see #findPageByIds(Pages)
+     */
+    protected boolean deferredJoinPaging = false;
+
+    public boolean isDeferredJoinPaging() {
+        return deferredJoinPaging;
+    }
+
+    public void setDeferredJoinPaging(boolean deferredJoinPaging) {
+        this.deferredJoinPaging = deferredJoinPaging;
+    }
+
+    public boolean isCompileCriteriaQuery() {
+        return compileCriteriaQuery;
+    }
+
+    public void setCompileCriteriaQuery(boolean compileCriteriaQuery) {
+        this.compileCriteriaQuery = compileCriteriaQuery;
+    }
+
+    /**
+     * 分页查询拼接动态条件后的语句缓存
+     */
+    protected final DynamicConditionCache dynamicConditionCache = new DynamicConditionCache();
+
+    /**
+     * 分页查询的count语句生成及缓存，可通过{@link #registerCountQuery(String, String)}指定手写的count语句
+     */
+    protected final CountQueryDeriver countQueryDeriver = new CountQueryDeriver();
+
+    /**
+     * 并发count默认使用的执行器：可用虚拟线程时（JDK21+）每个count创建一个虚拟线程，否则使用线程数及队列长度有上限的线程池，
+     * 队列满时在调用线程中执行
+     */
+    private static volatile ExecutorService defaultCountExecutor;
+
+    /**
+     * 默认执行器同时执行的count数，每个并发count占用一个数据库连接，超出时在当前session中顺序执行
+     */
+    private static final Semaphore DEFAULT_COUNT_PERMITS = new Semaphore(Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * 分页查询时count是否与分页查询并发执行，在可写的事务中时仍顺序执行
+     */
+    protected boolean concurrentCount = false;
+
+    protected ExecutorService countExecutor;
+
+    public boolean isConcurrentCount() {
+        return concurrentCount;
+    }
+
+    public void setConcurrentCount(boolean concurrentCount) {
+        this.concurrentCount = concurrentCount;
+    }
+
+    public ExecutorService getCountExecutor() {
+        if (countExecutor != null) {
+            return countExecutor;
+        }
+        if (defaultCountExecutor == null) {
+            synchronized (SupportHibernateDao.class) {
+                if (defaultCountExecutor == null) {
+                    defaultCountExecutor = newCountExecutor();
+                }
+            }
+        }
+        return defaultCountExecutor;
+    }
+
+    public void setCountExecutor(ExecutorService countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    private static ExecutorService newCountExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            AtomicInteger index = new AtomicInteger();
+            return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(threads * 64), runnable -> {
+                Thread thread = new Thread(runnable, "page-count-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    /**
+     * count是否可以在独立的session中并发执行：开启了{@link #isConcurrentCount()}，且不在事务中或在只读的spring事务中。
+     * 可写的事务中独立session看不到当前事务未提交的数据，总数可能与分页结果不一致
+     *
+     * @param session 分页查询的session
+     * @return
+     */
+    protected boolean isConcurrentCountAllowed(final Session session) {
+        if (!isConcurrentCount()) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+        return !session.getTransaction().isActive();
+    }
+
     /**
      * get all data by sort
      *
@@ -74,8 +267,7 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      */
 
     public List<T> findAll(final Sort sort) {
-        javax.persistence.criteria.CriteriaQuery criteriaQuery = createCriteriaQuery(sort, null);
-        return find(criteriaQuery);
+        return createConditionsQuery(sort, null).list();
     }
 
     // -- Page query function --//
@@ -98,28 +290,62 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * query input parameters.
      */
     public <X> Pages<X> findPage(final Pages<X> page, final Class<X> clazz, final String hql, final Object... values) {
+        return findPage(page, (Keyset) null, clazz, hql, values);
+    }
+
+    /**
+     * query by HQL, keyset为空时按offset分页，否则按keyset分页。
+     *
+     * @param page
+     * @param keyset keyset分页游标，查询后设置下一页的游标
+     * @param clazz
+     * @param hql
+     * @param values values Variable number of parameters, in order to bind.
+     * @return Paging query results , with the list of results and all of the
+     * query input parameters.
+     * @see Keyset
+     */
+    public <X> Pages<X> findPage(final Pages<X> page, final Keyset keyset, final Class<X> clazz, final String hql, final Object... values) {
         Assert.notNull(page, "page can not be null");
         /**
          * 动态拼接参数
          */
         List<Object> paramValue = ListUtil.arrayToList(values);
-        String queryHql = PageSQLHandler.dualDynamicCondition(hql, page.getConditions(), paramValue);
-        if (page.isAutoCount()) {
-            long totalCount = countHqlResult(queryHql, paramValue.toArray());
-            page.setTotalCount(totalCount);
-            if (totalCount == 0) {
-                return page;
-            }
+        final Sort sort = keyset == null ? page.getSort() : null;
+        DynamicConditionCache.Rewrite rewrite = dynamicConditionCache.rewrite(hql, page.getConditions(), sort, paramValue, query -> appendOrderBy(query, sort));
+        String queryHql = rewrite.getQuery();
+        final Supplier<Long> counter = countSupplier(hql, page, values, true, queryHql, paramValue.toArray());
+
+        List<SeekKey> seekKeys = null;
+        if (keyset != null) {
+            seekKeys = buildSeekKeys(page.getSort(), keyset);
+            queryHql = appendKeysetCondition(queryHql, seekKeys, keyset, "", value -> {
+                paramValue.add(value);
+                return "?" + (paramValue.size() - 1);
+            });
+            queryHql = appendKeysetOrderBy(queryHql, seekKeys, "");
+        } else {
+            queryHql = rewrite.getPagedQuery();
         }
 
-        queryHql += appendOrderBy(queryHql, page.getSort());
+        String windowHql = isWindowCountSupported(page, keyset) ? appendWindowCount(queryHql, true) : null;
+        if (windowHql != null) {
+            Query<Object[]> wq = createQuery(windowHql, paramValue.toArray());
+            setPageParameterToQuery(wq, page);
+            page.setResult(fetchWindowCount(page, wq.list(), counter));
+            return page;
+        }
 
         Query<X> q = createQuery(queryHql, clazz, paramValue.toArray());
 
-        setPageParameterToQuery(q, page);
+        setPageParameterToQuery(q, page, keyset);
 
-        List<X> result = q.list();
+        List<X> result = countAndFetch(page, counter, q::list);
+        if (result == null) {
+            return page;
+        }
         page.setResult(result);
+        setNextKeyset(keyset, seekKeys, result, page);
         return page;
     }
 
@@ -137,28 +363,58 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * query input parameters.
      */
     public <X> Pages<X> findPage(final Pages<X> page, final String hql, final Map<String, ?> values) {
+        return findPage(page, (Keyset) null, hql, values);
+    }
+
+    /**
+     * query by HQL, keyset为空时按offset分页，否则按keyset分页。
+     *
+     * @param page
+     * @param keyset keyset分页游标，查询后设置下一页的游标
+     * @param hql
+     * @param values Named parameters, bind by name.
+     * @return Paging query results , with the list of results and all of the
+     * query input parameters.
+     * @see Keyset
+     */
+    public <X> Pages<X> findPage(final Pages<X> page, final Keyset keyset, final String hql, final Map<String, ?> values) {
         Assert.notNull(page, "page can not be null");
         /**
          * 动态拼接参数
          */
         Map<String, Object> paramValue = Maps.newHashMap(values);
-        String queryHql = PageSQLHandler.dualDynamicCondition(hql, page.getConditions(), paramValue);
-        if (page.isAutoCount()) {
-            long totalCount = countHqlResult(queryHql, paramValue);
-            page.setTotalCount(totalCount);
-            if (totalCount == 0) {
-                return page;
-            }
+        final Sort sort = keyset == null ? page.getSort() : null;
+        DynamicConditionCache.Rewrite rewrite = dynamicConditionCache.rewrite(hql, page.getConditions(), sort, paramValue, query -> appendOrderBy(query, sort));
+        String queryHql = rewrite.getQuery();
+        final Supplier<Long> counter = countSupplier(hql, page, values, true, queryHql, Maps.newHashMap(paramValue));
+
+        List<SeekKey> seekKeys = null;
+        if (keyset != null) {
+            seekKeys = buildSeekKeys(page.getSort(), keyset);
+            queryHql = appendKeysetCondition(queryHql, seekKeys, keyset, "", namedKeysetBinder(paramValue));
+            queryHql = appendKeysetOrderBy(queryHql, seekKeys, "");
+        } else {
+            queryHql = rewrite.getPagedQuery();
         }
 
-        queryHql += appendOrderBy(queryHql, page.getSort());
+        String windowHql = isWindowCountSupported(page, keyset) ? appendWindowCount(queryHql, true) : null;
+        if (windowHql != null) {
+            Query<Object[]> wq = createQuery(windowHql, paramValue);
+            setPageParameterToQuery(wq, page);
+            page.setResult(fetchWindowCount(page, wq.list(), counter));
+            return page;
+        }
 
         Query<X> q = createQuery(queryHql, paramValue);
 
-        setPageParameterToQuery(q, page);
+        setPageParameterToQuery(q, page, keyset);
 
-        List<X> result = q.list();
+        List<X> result = countAndFetch(page, counter, q::list);
+        if (result == null) {
+            return page;
+        }
         page.setResult(result);
+        setNextKeyset(keyset, seekKeys, result, page);
         return page;
     }
 
@@ -228,6 +484,422 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         }
     }
 
+    /**
+     * Set the paging parameters to the Query object, keyset paging always
+     * starts from the first row of the seek condition.
+     */
+    protected <X> void setPageParameterToQuery(Query<X> q, final Pages<?> page, final Keyset keyset) {
+        if (keyset == null) {
+            setPageParameterToQuery(q, page);
+        } else if (page.getPageSize() > 0) {
+            q.setFirstResult(0);
+            q.setMaxResults(page.getPageSize());
+        }
+    }
+
+    /**
+     * 执行count及分页查询并设置总数。{@link #isConcurrentCountAllowed(Session)}时count在独立的只读session中
+     * 与分页查询并发执行，任一查询失败时取消另一个查询。
+     *
+     * @param page
+     * @param counter count查询
+     * @param fetcher 分页查询
+     * @return 分页结果，总数为0时不执行分页查询并返回null
+     * @author songlin
+     */
+    protected <X> List<X> countAndFetch(final Pages<?> page, final Supplier<Long> counter, final Supplier<List<X>> fetcher) {
+        if (!page.isAutoCount()) {
+            return fetcher.get();
+        }
+        final Session pageSession = getSession();
+        final Semaphore permits = countExecutor == null ? DEFAULT_COUNT_PERMITS : null;
+        if (!isConcurrentCountAllowed(pageSession) || (permits != null && !permits.tryAcquire())) {
+            long totalCount = counter.get();
+            page.setTotalCount(totalCount);
+            return totalCount == 0 ? null : fetcher.get();
+        }
+        final AtomicReference<Session> countSession = new AtomicReference<>();
+        // 任务未开始即被取消时finally不会执行，由取消的一方归还许可
+        final AtomicBoolean released = new AtomicBoolean();
+        Future<Long> future;
+        try {
+            future = getCountExecutor().submit(() -> {
+                try (Session session = getSessionFactory().openSession()) {
+                    session.setDefaultReadOnly(true);
+                    session.setHibernateFlushMode(FlushMode.MANUAL);
+                    countSession.set(session);
+                    return doInSession(session, counter);
+                } catch (RuntimeException e) {
+                    cancelQuery(pageSession);
+                    throw e;
+                } finally {
+                    releasePermit(permits, released);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releasePermit(permits, released);
+            throw e;
+        }
+        List<X> result;
+        try {
+            result = fetcher.get();
+        } catch (RuntimeException e) {
+            cancelCount(future, permits, released);
+            cancelQuery(countSession.get());
+            throw e;
+        }
+        try {
+            page.setTotalCount(future.get());
+        } catch (InterruptedException e) {
+            cancelCount(future, permits, released);
+            cancelQuery(countSession.get());
+            Thread.currentThread().interrupt();
+            throw new AppServiceException("count query interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new AppServiceException("count query failed", e.getCause());
+        }
+        return result;
+    }
+
+    private static void cancelCount(final Future<?> future, final Semaphore permits, final AtomicBoolean released) {
+        if (future.cancel(true)) {
+            releasePermit(permits, released);
+        }
+    }
+
+    private static void releasePermit(final Semaphore permits, final AtomicBoolean released) {
+        if (permits != null && released.compareAndSet(false, true)) {
+            permits.release();
+        }
+    }
+
+    private void cancelQuery(Session session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.cancelQuery();
+        } catch (RuntimeException e) {
+            logger.debug("cancel query failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 是否使用 count(*) over() 在分页查询中同时返回总数：dialect为支持窗口函数的{@link EnhancementMySQL8Dialect}，
+     * 且不是keyset分页、未开启count缓存及并发count；否则执行独立的count查询
+     */
+    protected boolean isWindowCountSupported(final Pages<?> page, final Keyset keyset) {
+        if (!page.isAutoCount() || keyset != null || countCache != null || isConcurrentCount()) {
+            return false;
+        }
+        return getDialect() instanceof EnhancementMySQL8Dialect;
+    }
+
+    /**
+     * 在查询的select列表最后加上 count(*) over()，不支持的语句（无select、select distinct、select new、union）返回null
+     *
+     * @param query
+     * @param hql   true时使用hql函数{@link EnhancementDialect#COUNT_OVER_FUNCTION}
+     * @return
+     */
+    protected String appendWindowCount(final String query, final boolean hql) {
+        String trimQuery = query.trim();
+        int from = indexOfClause(trimQuery, "from", false);
+        if (from < 0 || indexOfClause(trimQuery, "union") >= 0) {
+            return null;
+        }
+        String column = hql ? EnhancementDialect.COUNT_OVER_FUNCTION + "()" : "count(*) over() as " + WINDOW_COUNT_ALIAS;
+        if (StringUtils.startsWithIgnoreCase(trimQuery, "from ") && hql) {
+            // from Entity [as] alias ...
+            String[] tokens = StringUtils.split(trimQuery, null, 5);
+            String alias = tokens.length > 2 && "as".equalsIgnoreCase(tokens[2]) ? (tokens.length > 3 ? tokens[3] : null) : (tokens.length > 2 ? tokens[2] : null);
+            if (alias == null || !IDENTIFIER.matcher(alias).matches() || HQL_KEYWORDS.contains(alias.toLowerCase())) {
+                return null;
+            }
+            return "select " + alias + ", " + column + " " + trimQuery;
+        }
+        String select = StringUtils.normalizeSpace(trimQuery.substring(0, from)).toLowerCase();
+        if (!select.startsWith("select ") || select.startsWith("select distinct ") || select.startsWith("select new ")) {
+            return null;
+        }
+        return trimQuery.substring(0, from) + ", " + column + " " + trimQuery.substring(from);
+    }
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+
+    private static final Set<String> HQL_KEYWORDS = new HashSet<>(Arrays.asList("where", "join", "left", "right", "inner", "outer",
+            "order", "group", "having", "fetch", "cross", "full"));
+
+    /**
+     * 去掉hql窗口函数查询结果中的总数列并设置总数，当前页没有数据时（超出最后一页）执行count查询
+     */
+    protected <X> List<X> fetchWindowCount(final Pages<?> page, final List<Object[]> rows, final Supplier<Long> counter) {
+        List<X> result = new ArrayList<>(rows.size());
+        long totalCount = -1;
+        for (Object[] row : rows) {
+            totalCount = NumberUtil.toLong(row[row.length - 1], 0L);
+            result.add((X) (row.length == 2 ? row[0] : Arrays.copyOf(row, row.length - 1)));
+        }
+        page.setTotalCount(resolveWindowCount(page, totalCount, counter));
+        return result;
+    }
+
+    private long resolveWindowCount(final Pages<?> page, final long totalCount, final Supplier<Long> counter) {
+        if (totalCount >= 0) {
+            return totalCount;
+        }
+        return page.getFirst() > 1 ? counter.get() : 0;
+    }
+
+    /**
+     * sql查询结果转换为非实体类（DTO）时使用的ResultTransformer，默认为{@link TransformerToBean}，
+     * 子类可改为{@link Transformers#aliasToBean(Class)}等
+     *
+     * @param clazz
+     * @return
+     */
+    protected ResultTransformer beanTransformer(Class<?> clazz) {
+        return new TransformerToBean(clazz);
+    }
+
+    /**
+     * sql查询结果转换为Map时使用的ResultTransformer，默认为{@link RowMapTransformer}，
+     * 整个结果集共用别名索引，每行只保存Object[]
+     *
+     * @return
+     */
+    protected ResultTransformer mapTransformer() {
+        return new RowMapTransformer();
+    }
+
+    /**
+     * 设置sql窗口函数查询的结果转换，实体查询返回实体，其他按别名转换为clas或Map
+     */
+    private WindowCountTransformer setWindowCountTransformer(final NativeQuery<?> q, final Class<?> clas) {
+        WindowCountTransformer transformer;
+        if (isEntityClass(clas)) {
+            q.addEntity(clas).addScalar(WINDOW_COUNT_ALIAS, LongType.INSTANCE);
+            transformer = new WindowCountTransformer(null);
+        } else {
+            transformer = new WindowCountTransformer(clas != null ? beanTransformer(clas) : mapTransformer());
+        }
+        q.unwrap(NativeQueryImpl.class).setResultTransformer(transformer);
+        return transformer;
+    }
+
+    /**
+     * keyset分页的排序字段
+     */
+    protected static class SeekKey {
+        private final String property;
+
+        private final boolean ascending;
+
+        SeekKey(String property, boolean ascending) {
+            this.property = property;
+            this.ascending = ascending;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+    }
+
+    /**
+     * keyset分页的排序字段：sort中的字段，加上id作为唯一的最后排序字段（sort中未包含时），
+     * id的排序方向与sort最后一个字段相同
+     */
+    protected List<SeekKey> buildSeekKeys(final Sort sort, final Keyset keyset) {
+        String idProperty = StringUtil.isNotBlank(keyset.getIdProperty()) ? keyset.getIdProperty() : getIdName();
+        List<SeekKey> seekKeys = Lists.newArrayList();
+        boolean ascending = true;
+        if (sort != null) {
+            Iterator<cn.wuxia.common.orm.query.Sort.Order> it = sort.iterator();
+            while (it.hasNext()) {
+                cn.wuxia.common.orm.query.Sort.Order order = it.next();
+                seekKeys.add(new SeekKey(order.getProperty(), order.isAscending()));
+                ascending = order.isAscending();
+            }
+        }
+        boolean hasId = false;
+        for (SeekKey seekKey : seekKeys) {
+            hasId |= StringUtils.equals(seekKey.getProperty(), idProperty);
+        }
+        if (!hasId) {
+            seekKeys.add(new SeekKey(idProperty, ascending));
+        }
+        return seekKeys;
+    }
+
+    /**
+     * 生成 (k1 > ?) or (k1 = ? and k2 > ?) ... 形式的seek条件并拼接到查询语句的where中，
+     * 原有的where条件加上括号，seek条件插入到order by/limit之前，不支持group by语句
+     *
+     * @param query
+     * @param seekKeys
+     * @param keyset
+     * @param prefix   字段前缀，如sql外层查询的别名
+     * @param binder   绑定参数，返回参数占位符
+     * @return
+     */
+    protected String appendKeysetCondition(String query, List<SeekKey> seekKeys, Keyset keyset, String prefix, Function<Object, String> binder) {
+        if (StringUtil.isBlank(keyset.getAfter())) {
+            return query;
+        }
+        Assert.isTrue(indexOfClause(query, "group by") < 0, "keyset paging does not support group by: " + query);
+        Object[] values = Keyset.decode(keyset.getAfter(), seekKeys.size());
+        StringBuilder condition = new StringBuilder("(");
+        for (int i = 0; i < seekKeys.size(); i++) {
+            if (i > 0) {
+                condition.append(" or ");
+            }
+            condition.append("(");
+            for (int j = 0; j < i; j++) {
+                condition.append(prefix).append(seekKeys.get(j).getProperty()).append(" = ").append(binder.apply(values[j])).append(" and ");
+            }
+            condition.append(prefix).append(seekKeys.get(i).getProperty()).append(seekKeys.get(i).isAscending() ? " > " : " < ")
+                    .append(binder.apply(values[i])).append(")");
+        }
+        condition.append(")");
+        int end = indexOfTail(query);
+        String head = query.substring(0, end).trim();
+        int where = indexOfClause(head, "where");
+        if (where < 0) {
+            head += " where " + condition;
+        } else {
+            head = head.substring(0, where) + "where (" + head.substring(where + "where".length()).trim() + ") and " + condition;
+        }
+        return end < query.length() ? head + " " + query.substring(end).trim() : head;
+    }
+
+    /**
+     * 按seek字段排序，替换查询语句原有的order by
+     *
+     * @param query
+     * @param seekKeys
+     * @param prefix   字段前缀，如sql外层查询的别名
+     * @return
+     */
+    protected String appendKeysetOrderBy(String query, List<SeekKey> seekKeys, String prefix) {
+        StringBuilder orderBy = new StringBuilder(" order by ");
+        for (int i = 0; i < seekKeys.size(); i++) {
+            if (i > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append(prefix).append(seekKeys.get(i).getProperty()).append(seekKeys.get(i).isAscending() ? " asc" : " desc");
+        }
+        int end = indexOfTail(query);
+        int limit = indexOfClause(query, "limit", false);
+        return query.substring(0, end).trim() + orderBy + (limit < 0 ? "" : " " + query.substring(limit).trim());
+    }
+
+    /**
+     * 语句最外层order by或limit的位置，都不存在时返回语句长度
+     */
+    private static int indexOfTail(final String query) {
+        int end = query.length();
+        for (String clause : new String[] { "order by", "limit" }) {
+            int index = indexOfClause(query, clause, false);
+            if (index >= 0) {
+                end = Math.min(end, index);
+            }
+        }
+        return end;
+    }
+
+    private Function<Object, String> namedKeysetBinder(final Map<String, Object> paramValue) {
+        return value -> {
+            String name = "keyset" + paramValue.size();
+            paramValue.put(name, value);
+            return ":" + name;
+        };
+    }
+
+    /**
+     * 根据当前页最后一行设置下一页的游标，不足一页时没有下一页
+     */
+    protected void setNextKeyset(final Keyset keyset, final List<SeekKey> seekKeys, final List<?> result, final Pages<?> page) {
+        if (keyset == null) {
+            return;
+        }
+        if (ListUtil.isEmpty(result) || (page.getPageSize() > 0 && result.size() < page.getPageSize())) {
+            keyset.setNext(null);
+            return;
+        }
+        Object last = result.get(result.size() - 1);
+        Object[] values = new Object[seekKeys.size()];
+        for (int i = 0; i < seekKeys.size(); i++) {
+            values[i] = getKeysetValue(last, seekKeys.get(i).getProperty());
+            Assert.notNull(values[i], "keyset sort value can not be null: " + seekKeys.get(i).getProperty());
+        }
+        keyset.setNext(Keyset.encode(values));
+    }
+
+    /**
+     * 读取行的排序字段值，Map按key（去掉别名前缀）读取，对象按属性路径读取，属性带别名前缀时去掉别名再读取
+     */
+    private Object getKeysetValue(final Object row, final String property) {
+        if (row instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) row;
+            return map.containsKey(property) ? map.get(property) : map.get(StringUtils.substringAfterLast(property, "."));
+        }
+        BeanWrapper wrapper = PropertyAccessorFactory.forBeanPropertyAccess(row);
+        if (!wrapper.isReadableProperty(property) && property.contains(".")) {
+            return wrapper.getPropertyValue(StringUtils.substringAfter(property, "."));
+        }
+        return wrapper.getPropertyValue(property);
+    }
+
+    /**
+     * 查找语句最外层（不在括号及字符串内）关键字最后出现的位置
+     *
+     * @param query
+     * @param keyword
+     * @return 不存在时返回-1
+     */
+    protected static int indexOfClause(final String query, final String keyword) {
+        return indexOfClause(query, keyword, true);
+    }
+
+    /**
+     * 查找语句最外层（不在括号及字符串内）关键字出现的位置
+     *
+     * @param query
+     * @param keyword
+     * @param last    true: 最后出现的位置，false: 第一次出现的位置
+     * @return 不存在时返回-1
+     */
+    protected static int indexOfClause(final String query, final String keyword, final boolean last) {
+        int depth = 0;
+        boolean quoted = false;
+        int index = -1;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && c == '(') {
+                depth++;
+            } else if (!quoted && c == ')') {
+                depth--;
+            } else if (!quoted && depth == 0 && query.regionMatches(true, i, keyword, 0, keyword.length())
+                    && (i == 0 || Character.isWhitespace(query.charAt(i - 1)))
+                    && (i + keyword.length() == query.length() || !Character.isLetterOrDigit(query.charAt(i + keyword.length())))) {
+                index = i;
+                if (!last) {
+                    break;
+                }
+            }
+        }
+        return index;
+    }
+
     /**
      * Set the paging parameters to the Criteria object , the auxiliary
      * function.
@@ -244,111 +916,406 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         }
     }
 
-
+
+    /**
+     * set sort order to hibernate order
+     *
+     * @param c
+     * @param sort
+     * @return
+     * @author songlin
+     * instead of {@link #setSortOrder(javax.persistence.criteria.CriteriaQuery, Sort)}
+     */
+    @Deprecated
+    protected void setSortOrder(Criteria c, final Sort sort) {
+        Iterator<cn.wuxia.common.orm.query.Sort.Order> it = sort.iterator();
+        while (it.hasNext()) {
+            cn.wuxia.common.orm.query.Sort.Order order = it.next();
+            if (order.isAscending()) {
+                c.addOrder(Order.asc(order.getProperty()));
+            } else {
+                c.addOrder(Order.desc(order.getProperty()));
+            }
+        }
+    }
+
+
+    protected javax.persistence.criteria.CriteriaQuery<T> createCriteriaQuery(Sort sort, Conditions[] conditions) {
+        CriteriaBuilder criteriaBuilder = createCriteriaBuilder();
+        javax.persistence.criteria.CriteriaQuery criteriaQuery = criteriaBuilder.createQuery(entityClass);
+        Root<T> root = criteriaQuery.from(entityClass);
+        criteriaQuery.select(root);
+        Predicate predicate = Specifications.get(conditions).toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+        if (sort != null) {
+            criteriaQuery.orderBy(toOrders(criteriaBuilder, root, sort));
+        }
+        return criteriaQuery;
+
+    }
+
+    /**
+     * 由Conditions及排序创建查询，优先使用按查询形状编译的hql，不能编译时使用{@link #createCriteriaQuery(Sort, Conditions[])}
+     *
+     * @param sort
+     * @param conditions
+     * @return
+     * @see CompiledCriteriaQuery
+     */
+    protected Query<T> createConditionsQuery(Sort sort, Conditions[] conditions) {
+        EntityMetadataRegistry.EntityMetadata metadata = getEntityMetadata();
+        metadata.validate(sort);
+        metadata.validate(conditions);
+        Query<T> query = createCompiledQuery(sort, conditions, CompiledCriteriaQuery::getHql);
+        return query != null ? query : getSession().createQuery(createCriteriaQuery(sort, conditions));
+    }
+
+    /**
+     * @param statement 使用编译结果中的哪条语句：查询、count或exists
+     * @return 未开启或不能编译时返回null
+     */
+    private <X> Query<X> createCompiledQuery(Sort sort, Conditions[] conditions, Function<CompiledCriteriaQuery, String> statement) {
+        if (!compileCriteriaQuery) {
+            return null;
+        }
+        List<Conditions> active = CompiledCriteriaQuery.activeConditions(conditions);
+        if (active == null) {
+            return null;
+        }
+        String key = CompiledCriteriaQuery.shapeKey(sort, active);
+        CompiledCriteriaQuery compiled = compiledQueries.get(key);
+        if (compiled == null) {
+            compiled = CompiledCriteriaQuery.compile(getEntityMetadata(), sort, active);
+            if (compiledQueries.size() < MAX_COMPILED_QUERIES) {
+                compiledQueries.putIfAbsent(key, compiled);
+            }
+        }
+        if (!compiled.isSupported() || !compiled.isBindable(active)) {
+            return null;
+        }
+        Query<X> query = getSession().createQuery(statement.apply(compiled));
+        compiled.bind(query, active);
+        return query;
+    }
+
+    /**
+     * 是否存在满足条件的记录，只查询一条记录的id，不加载实体
+     *
+     * @param conditions
+     * @return
+     * @author songlin
+     */
+    public boolean exists(final Conditions... conditions) {
+        return !createIdQuery(null, conditions).setMaxResults(1).list().isEmpty();
+    }
+
+    /**
+     * 创建只查询id的查询，条件及排序与{@link #createConditionsQuery(Sort, Conditions[])}相同
+     *
+     * @param sort
+     * @param conditions
+     * @return
+     */
+    protected Query<Object> createIdQuery(final Sort sort, final Conditions[] conditions) {
+        EntityMetadataRegistry.EntityMetadata metadata = getEntityMetadata();
+        metadata.validate(sort);
+        metadata.validate(conditions);
+        Query<Object> query = createCompiledQuery(sort, conditions, CompiledCriteriaQuery::getIdHql);
+        if (query != null) {
+            return query;
+        }
+        CriteriaBuilder criteriaBuilder = createCriteriaBuilder();
+        javax.persistence.criteria.CriteriaQuery<Object> criteriaQuery = criteriaBuilder.createQuery(Object.class);
+        Root<T> root = criteriaQuery.from(entityClass);
+        criteriaQuery.select(metadata.getIdName() != null ? root.get(metadata.getIdName()) : root);
+        Predicate predicate = Specifications.get(conditions).toPredicate(root, criteriaQuery, criteriaBuilder);
+        if (predicate != null) {
+            criteriaQuery.where(predicate);
+        }
+        if (sort != null) {
+            criteriaQuery.orderBy(toOrders(criteriaBuilder, root, sort));
+        }
+        return getSession().createQuery(criteriaQuery);
+    }
+
+    protected long count(Conditions[] conditions) {
+        getEntityMetadata().validate(conditions);
+        return cachedCount(null, null, conditions == null ? null : Arrays.asList(conditions), () -> {
+            Query<Long> query = createCompiledQuery(null, conditions, CompiledCriteriaQuery::getCountHql);
+            if (query != null) {
+                return NumberUtil.toLong(query.uniqueResult());
+            }
+            return NumberUtil.toLong(getCountQuery(Specifications.get(conditions), entityClass).getSingleResult());
+        });
+    }
+
+    /**
+     * 开启{@link CountCache}时从缓存获取总数，否则直接执行count查询
+     *
+     * @param query      查询语句
+     * @param values     绑定参数
+     * @param conditions criteria查询的条件
+     * @param loader     执行count查询
+     * @return
+     */
+    protected long cachedCount(String query, Object values, List<Conditions> conditions, Supplier<Long> loader) {
+        if (countCache == null) {
+            return loader.get();
+        }
+        return countCache.get(entityClass, query, values, conditions, loader);
+    }
+
+    protected <S extends T> TypedQuery<Long> getCountQuery(@Nullable ConditionsSpecification<S> spec, Class<S> domainClass) {
+        CriteriaBuilder builder = createCriteriaBuilder();
+        javax.persistence.criteria.CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<S> root = this.applySpecificationToCriteria(spec, domainClass, query);
+        if (query.isDistinct()) {
+            query.select(builder.countDistinct(root));
+        } else {
+            query.select(builder.count(root));
+        }
+
+        query.orderBy(Collections.emptyList());
+        return this.getSession().createQuery(query);
+    }
+
+    private <S, U extends T> Root<U> applySpecificationToCriteria(@Nullable ConditionsSpecification<U> spec, Class<U> domainClass, javax.persistence.criteria.CriteriaQuery<S> query) {
+        Assert.notNull(domainClass, "Domain class must not be null!");
+        Assert.notNull(query, "CriteriaQuery must not be null!");
+        Root<U> root = query.from(domainClass);
+        if (spec == null) {
+            return root;
+        } else {
+            CriteriaBuilder builder = createCriteriaBuilder();
+            Predicate predicate = spec.toPredicate(root, query, builder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+
+            return root;
+        }
+    }
+
+    /**
+     * query by CriteriaQuery
+     *
+     * @param page
+     * @return Paging query results. Comes with a list of results and all of the
+     * query input parameters.
+     */
+    public Pages<T> findPage(final Pages page) {
+        return findPage(page, (Keyset) null);
+    }
+
+    /**
+     * query by CriteriaQuery, keyset为空时按offset分页，否则按keyset分页。
+     *
+     * @param page
+     * @param keyset keyset分页游标，查询后设置下一页的游标
+     * @return Paging query results. Comes with a list of results and all of the
+     * query input parameters.
+     * @see Keyset
+     */
+    public Pages<T> findPage(final Pages page, final Keyset keyset) {
+        Assert.notNull(page, "page can not be null");
+        if (keyset == null && isDeferredJoinPaging() && getEntityMetadata().getIdName() != null) {
+            return findPageByIds(page);
+        }
+
+        //转换为Criterion
+
+        Conditions[] conditions = (Conditions[]) ListUtil.listToArray(page.getConditions());
+        Query<T> query;
+        List<SeekKey> seekKeys = null;
+        if (keyset != null) {
+            getEntityMetadata().validate(page.getSort());
+            getEntityMetadata().validate(conditions);
+            seekKeys = buildSeekKeys(page.getSort(), keyset);
+            query = getSession().createQuery(createKeysetCriteriaQuery(seekKeys, keyset, conditions));
+        } else {
+            query = createConditionsQuery(page.getSort(), conditions);
+        }
+        setPageParameterToQuery(query, page, keyset);
+        List<T> result = countAndFetch(page, () -> count(conditions), query::list);
+        if (result == null) {
+            return page;
+        }
+        page.setResult(result);
+        setNextKeyset(keyset, seekKeys, result, page);
+        return page;
+    }
+
+    /**
+     * 先查id的分页（deferred join）：第一步按条件及排序只查询当前页的id，排序及条件的字段有索引时可以只扫描索引；
+     * 第二步按id从session及二级缓存中获取实体，未命中的id用一次in查询加载，按id的顺序返回。
+     * 适用于字段多或有大字段的实体，offset较大时效果更明显。
+     *
+     * @param page
+     * @return
+     * @author songlin
+     * @see #setDeferredJoinPaging(boolean)
+     * @see #get(Collection)
+     */
+    public Pages<T> findPageByIds(final Pages page) {
+        Assert.notNull(page, "page can not be null");
+        Assert.notNull(getEntityMetadata().getIdName(), entityClass.getName() + " has no single id property");
+        Conditions[] conditions = (Conditions[]) ListUtil.listToArray(page.getConditions());
+        Query<Object> query = createIdQuery(page.getSort(), conditions);
+        setPageParameterToQuery(query, page);
+        List<T> result = countAndFetch(page, () -> count(conditions), () -> get((List<PK>) (List<?>) query.list()));
+        if (result == null) {
+            return page;
+        }
+        page.setResult(result);
+        return page;
+    }
+
+    /**
+     * 按DTO的属性只查询需要的字段，返回的DTO不受session管理，不会加载大字段及关联。
+     * DTO中与实体同名的非集合、非关联属性作为查询字段，条件与{@link #find(Conditions...)}相同
+     *
+     * @param dto
+     * @param conditions
+     * @return
+     * @author songlin
+     */
+    public <D> List<D> findProjection(final Class<D> dto, final Conditions... conditions) {
+        return findProjection(dto, null, conditions);
+    }
+
+    /**
+     * @param dto
+     * @param sort
+     * @param conditions
+     * @return
+     * @see #findProjection(Class, Conditions...)
+     */
+    public <D> List<D> findProjection(final Class<D> dto, final Sort sort, final Conditions... conditions) {
+        Assert.notNull(dto, "dto can not be null");
+        return toProjection(dto, createProjectionQuery(dto, sort, conditions).list());
+    }
+
     /**
-     * set sort order to hibernate order
+     * 按DTO的属性分页查询，只查询需要的字段
      *
-     * @param c
-     * @param sort
+     * @param page
+     * @param dto
      * @return
      * @author songlin
-     * instead of {@link #setSortOrder(javax.persistence.criteria.CriteriaQuery, Sort)}
+     * @see #findProjection(Class, Conditions...)
      */
-    @Deprecated
-    protected void setSortOrder(Criteria c, final Sort sort) {
-        Iterator<cn.wuxia.common.orm.query.Sort.Order> it = sort.iterator();
-        while (it.hasNext()) {
-            cn.wuxia.common.orm.query.Sort.Order order = it.next();
-            if (order.isAscending()) {
-                c.addOrder(Order.asc(order.getProperty()));
-            } else {
-                c.addOrder(Order.desc(order.getProperty()));
-            }
+    public <D> Pages<D> findPageAs(final Pages<D> page, final Class<D> dto) {
+        Assert.notNull(page, "page can not be null");
+        Assert.notNull(dto, "dto can not be null");
+        Conditions[] conditions = (Conditions[]) ListUtil.listToArray(page.getConditions());
+        Query<Tuple> query = createProjectionQuery(dto, page.getSort(), conditions);
+        setPageParameterToQuery(query, page);
+        List<D> result = countAndFetch(page, () -> count(conditions), () -> toProjection(dto, query.list()));
+        if (result != null) {
+            page.setResult(result);
         }
+        return page;
     }
 
-
-    protected javax.persistence.criteria.CriteriaQuery<T> createCriteriaQuery(Sort sort, Conditions[] conditions) {
+    /**
+     * 创建只查询DTO属性的tuple查询，每个字段的别名为属性名
+     */
+    protected Query<Tuple> createProjectionQuery(final Class<?> dto, final Sort sort, final Conditions[] conditions) {
+        EntityMetadataRegistry.EntityMetadata metadata = getEntityMetadata();
+        metadata.validate(sort);
+        metadata.validate(conditions);
         CriteriaBuilder criteriaBuilder = createCriteriaBuilder();
-        javax.persistence.criteria.CriteriaQuery criteriaQuery = criteriaBuilder.createQuery(entityClass);
+        javax.persistence.criteria.CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
         Root<T> root = criteriaQuery.from(entityClass);
-        criteriaQuery.select(root);
+        List<Selection<?>> selections = Lists.newArrayList();
+        for (String property : getProjectionProperties(dto)) {
+            selections.add(root.get(property).alias(property));
+        }
+        criteriaQuery.multiselect(selections);
         Predicate predicate = Specifications.get(conditions).toPredicate(root, criteriaQuery, criteriaBuilder);
         if (predicate != null) {
             criteriaQuery.where(predicate);
         }
         if (sort != null) {
-            Iterator<cn.wuxia.common.orm.query.Sort.Order> it = sort.iterator();
-            while (it.hasNext()) {
-                cn.wuxia.common.orm.query.Sort.Order order = it.next();
-                criteriaQuery.orderBy(new OrderImpl(root.get(order.getProperty()), order.isAscending()));
-            }
+            criteriaQuery.orderBy(toOrders(criteriaBuilder, root, sort));
         }
-        return criteriaQuery;
-
-    }
-
-    protected long count(Conditions[] conditions) {
-        return NumberUtil.toLong(getCountQuery(Specifications.get(conditions), entityClass).getSingleResult());
+        return getSession().createQuery(criteriaQuery);
     }
 
-    protected <S extends T> TypedQuery<Long> getCountQuery(@Nullable ConditionsSpecification<S> spec, Class<S> domainClass) {
-        CriteriaBuilder builder = createCriteriaBuilder();
-        javax.persistence.criteria.CriteriaQuery<Long> query = builder.createQuery(Long.class);
-        Root<S> root = this.applySpecificationToCriteria(spec, domainClass, query);
-        if (query.isDistinct()) {
-            query.select(builder.countDistinct(root));
-        } else {
-            query.select(builder.count(root));
+    private List<javax.persistence.criteria.Order> toOrders(CriteriaBuilder criteriaBuilder, Root<T> root, Sort sort) {
+        List<javax.persistence.criteria.Order> orders = Lists.newArrayList();
+        Iterator<cn.wuxia.common.orm.query.Sort.Order> it = sort.iterator();
+        while (it.hasNext()) {
+            cn.wuxia.common.orm.query.Sort.Order order = it.next();
+            orders.add(order.isAscending() ? criteriaBuilder.asc(root.get(order.getProperty())) : criteriaBuilder.desc(root.get(order.getProperty())));
         }
-
-        query.orderBy(Collections.emptyList());
-        return this.getSession().createQuery(query);
+        return orders;
     }
 
-    private <S, U extends T> Root<U> applySpecificationToCriteria(@Nullable ConditionsSpecification<U> spec, Class<U> domainClass, javax.persistence.criteria.CriteriaQuery<S> query) {
-        Assert.notNull(domainClass, "Domain class must not be null!");
-        Assert.notNull(query, "CriteriaQuery must not be null!");
-        Root<U> root = query.from(domainClass);
-        if (spec == null) {
-            return root;
-        } else {
-            CriteriaBuilder builder = createCriteriaBuilder();
-            Predicate predicate = spec.toPredicate(root, query, builder);
-            if (predicate != null) {
-                query.where(predicate);
+    /**
+     * DTO中可以直接查询的属性：有setter且与实体同名的非集合、非关联属性，按DTO类缓存
+     *
+     * @param dto
+     * @return
+     */
+    protected String[] getProjectionProperties(final Class<?> dto) {
+        return projectionProperties.computeIfAbsent(dto, clazz -> {
+            EntityMetadataRegistry.EntityMetadata metadata = getEntityMetadata();
+            List<String> properties = Lists.newArrayList();
+            for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(clazz)) {
+                String name = descriptor.getName();
+                if (descriptor.getWriteMethod() != null && metadata.isSortable(name)
+                        && !getEntityMetadataRegistry().isEntity(metadata.getPropertyType(name))) {
+                    properties.add(name);
+                }
             }
+            Assert.notEmpty(properties, clazz.getName() + " has no property of " + entityClass.getName());
+            return properties.toArray(new String[0]);
+        });
+    }
 
-            return root;
+    private <D> List<D> toProjection(final Class<D> dto, final List<Tuple> tuples) {
+        ResultTransformer transformer = beanTransformer(dto);
+        String[] aliases = getProjectionProperties(dto);
+        List<D> result = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            result.add((D) transformer.transformTuple(tuple.toArray(), aliases));
         }
+        return result;
     }
 
     /**
-     * query by CriteriaQuery
-     *
-     * @param page
-     * @return Paging query results. Comes with a list of results and all of the
-     * query input parameters.
+     * 生成keyset分页的CriteriaQuery，在conditions的基础上加上seek条件及排序
      */
-    public Pages<T> findPage(final Pages page) {
-        Assert.notNull(page, "page can not be null");
-
-        //转换为Criterion
-
-        Conditions[] conditions = (Conditions[]) ListUtil.listToArray(page.getConditions());
-        if (page.isAutoCount()) {
-            long totalCount = count(conditions);
-            page.setTotalCount(totalCount);
-            if (totalCount == 0) {
-                return page;
+    protected javax.persistence.criteria.CriteriaQuery<T> createKeysetCriteriaQuery(List<SeekKey> seekKeys, Keyset keyset, Conditions[] conditions) {
+        CriteriaBuilder criteriaBuilder = createCriteriaBuilder();
+        javax.persistence.criteria.CriteriaQuery<T> criteriaQuery = createCriteriaQuery(null, conditions);
+        Root<T> root = (Root<T>) criteriaQuery.getRoots().iterator().next();
+        if (StringUtil.isNotBlank(keyset.getAfter())) {
+            Object[] values = Keyset.decode(keyset.getAfter(), seekKeys.size());
+            List<Predicate> seeks = Lists.newArrayList();
+            for (int i = 0; i < seekKeys.size(); i++) {
+                List<Predicate> ands = Lists.newArrayList();
+                for (int j = 0; j < i; j++) {
+                    ands.add(criteriaBuilder.equal(root.get(seekKeys.get(j).getProperty()), values[j]));
+                }
+                Expression<Comparable> path = root.get(seekKeys.get(i).getProperty());
+                ands.add(seekKeys.get(i).isAscending() ? criteriaBuilder.greaterThan(path, (Comparable) values[i])
+                        : criteriaBuilder.lessThan(path, (Comparable) values[i]));
+                seeks.add(criteriaBuilder.and(ands.toArray(new Predicate[0])));
             }
+            Predicate seek = criteriaBuilder.or(seeks.toArray(new Predicate[0]));
+            Predicate restriction = criteriaQuery.getRestriction();
+            criteriaQuery.where(restriction == null ? seek : criteriaBuilder.and(restriction, seek));
         }
-        javax.persistence.criteria.CriteriaQuery<T> criteriaQuery = createCriteriaQuery(page.getSort(), conditions);
-        Query query = getSession().createQuery(criteriaQuery);
-        setPageParameterToQuery(query, page);
-        List<T> result = query.list();
-        page.setResult(result);
-        return page;
+        List<javax.persistence.criteria.Order> orders = Lists.newArrayList();
+        for (SeekKey seekKey : seekKeys) {
+            orders.add(seekKey.isAscending() ? criteriaBuilder.asc(root.get(seekKey.getProperty())) : criteriaBuilder.desc(root.get(seekKey.getProperty())));
+        }
+        criteriaQuery.orderBy(orders);
+        return criteriaQuery;
     }
 
     /**
@@ -394,9 +1361,7 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * statement to query.
      */
     protected long countHqlResult(final String hql, final Object... values) {
-        String countHql = prepareCountHql(hql);
-        Object count = findUnique(countHql, values);
-        return NumberUtil.toLong(count, 0L);
+        return executeHqlCount(countQueryDeriver.deriveHql(hql), values);
     }
 
     /**
@@ -406,31 +1371,65 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * statement to query .
      */
     protected long countHqlResult(final String hql, final Map<String, ?> values) {
-        String countHql = prepareCountHql(hql);
-        Object count = findUnique(countHql, values);
-        return NumberUtil.toLong(count, 0L);
+        return executeHqlCount(countQueryDeriver.deriveHql(hql), values);
+    }
+
+    private long executeHqlCount(final String countHql, final Object... values) {
+        return cachedCount(countHql, values, null, () -> NumberUtil.toLong((Object) findUnique(countHql, values), 0L));
     }
 
+    private long executeHqlCount(final String countHql, final Map<String, ?> values) {
+        return cachedCount(countHql, values, null, () -> NumberUtil.toLong((Object) findUnique(countHql, values), 0L));
+    }
 
-    private String prepareCountHql(String orgHql) {
-        String fromHql = orgHql;
-        // the select clause and order by clause will affect the count query for
-        // simple exclusion.
-        int start = StringUtils.indexOfIgnoreCase(fromHql, "from ");
-        if (start < 0) {
-            throw new AppServiceException("查询语句有误，缺少from： [" + orgHql + "]");
-        }
-        int groupby = StringUtils.indexOfIgnoreCase(fromHql, " group by ");
-        if (groupby > 0) {
-            throw new AppServiceException("查询语句有误，暂不支持group by，请使用sql查询：" + orgHql);
+    /**
+     * 指定分页查询语句的count语句，代替自动生成的count语句。
+     * count语句按分页查询相同的方式拼接动态条件，需使用与分页查询相同的绑定参数
+     *
+     * @param query      分页查询的hql或sql（动态条件拼接前）
+     * @param countQuery 手写的count语句
+     */
+    public void registerCountQuery(final String query, final String countQuery) {
+        Assert.hasText(query, "query can not be null");
+        Assert.hasText(countQuery, "countQuery can not be null");
+        countQueryDeriver.register(query, countQuery);
+    }
+
+    /**
+     * 分页的count查询，query有手写的count语句时使用手写的count语句，否则由countQuery生成
+     *
+     * @param query       分页查询的语句（动态条件拼接前）
+     * @param page
+     * @param values      分页查询的参数（动态条件拼接前）
+     * @param hql
+     * @param countQuery  拼接动态条件后的查询语句
+     * @param countValues 拼接动态条件后的参数
+     * @return
+     */
+    private Supplier<Long> countSupplier(final String query, final Pages<?> page, final Object[] values, final boolean hql,
+                                         final String countQuery, final Object[] countValues) {
+        String registered = countQueryDeriver.getRegistered(query);
+        if (registered == null) {
+            return hql ? () -> countHqlResult(countQuery, countValues) : () -> countSQLResult(countQuery, countValues);
         }
-        int end = StringUtils.indexOfIgnoreCase(fromHql, " order by ");
+        List<Object> paramValue = ListUtil.arrayToList(values);
+        String registeredQuery = PageSQLHandler.dualDynamicCondition(registered, page.getConditions(), paramValue);
+        Object[] registeredValues = paramValue.toArray();
+        return hql ? () -> executeHqlCount(registeredQuery, registeredValues) : () -> executeSqlCount(registeredQuery, registeredValues);
+    }
 
-        if (end > 0) {
-            return "select count(*) " + StringUtil.substring(fromHql, start, end);
-        } else {
-            return "select count(*) " + StringUtil.substring(fromHql, start);
+    /**
+     * @see #countSupplier(String, Pages, Object[], boolean, String, Object[])
+     */
+    private Supplier<Long> countSupplier(final String query, final Pages<?> page, final Map<String, ?> values, final boolean hql,
+                                         final String countQuery, final Map<String, ?> countValues) {
+        String registered = countQueryDeriver.getRegistered(query);
+        if (registered == null) {
+            return hql ? () -> countHqlResult(countQuery, countValues) : () -> countSQLResult(countQuery, countValues);
         }
+        Map<String, Object> paramValue = Maps.newHashMap(values);
+        String registeredQuery = PageSQLHandler.dualDynamicCondition(registered, page.getConditions(), paramValue);
+        return hql ? () -> executeHqlCount(registeredQuery, paramValue) : () -> executeSqlCount(registeredQuery, paramValue);
     }
 
     /**
@@ -484,17 +1483,15 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * @author songlin.li
      */
     protected long countSQLResult(String sql, Object... values) {
-        long recordTotal;
         int classNameIndex = sql.toLowerCase().indexOf("from");
         if (classNameIndex == -1) {
             return 0;
-        } else {
-            sql = "select count(1) as count from (" + sql + ") orgi";
         }
+        return executeSqlCount(countQueryDeriver.deriveSql(sql), values);
+    }
 
-        NativeQuery<Object> query = createSQLQuery(sql, values);
-
-        recordTotal = NumberUtil.toLong(query.uniqueResult(), 0L);
+    private long executeSqlCount(String countSql, Object... values) {
+        long recordTotal = cachedCount(countSql, values, null, () -> NumberUtil.toLong(this.<Object>createSQLQuery(countSql, values).uniqueResult(), 0L));
         logger.debug("Total: " + recordTotal);
         return recordTotal;
     }
@@ -508,16 +1505,14 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * @author songlin.li
      */
     protected long countSQLResult(String sql, Map<String, ?> values) {
-        long recordTotal;
         int classNameIndex = sql.toLowerCase().indexOf("from");
         if (classNameIndex == -1)
             return 0;
-        else {
-            sql = "select count(1) as count from (" + sql + ") orgi";
-        }
+        return executeSqlCount(countQueryDeriver.deriveSql(sql), values);
+    }
 
-        NativeQuery<Object> query = createSQLQuery(sql, values);
-        recordTotal = NumberUtil.toLong(query.uniqueResult(), 0L);
+    private long executeSqlCount(String countSql, Map<String, ?> values) {
+        long recordTotal = cachedCount(countSql, values, null, () -> NumberUtil.toLong(this.<Object>createSQLQuery(countSql, values).uniqueResult(), 0L));
         logger.debug("Total: " + recordTotal);
         return recordTotal;
     }
@@ -588,7 +1583,7 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         logger.debug("sql: " + sql);
 
         NativeQuery query = this.createSQLQuery(sql, values);
-        query.unwrap(NativeQueryImpl.class).setResultTransformer(Criteria.ALIAS_TO_ENTITY_MAP);
+        query.unwrap(NativeQueryImpl.class).setResultTransformer(mapTransformer());
         List<Map<String, Object>> result = query.list();
 
         logger.debug("size: " + result.size());
@@ -607,13 +1602,77 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
     protected List<Map<String, Object>> queryToMap(String sql, Map<String, ?> values) {
         logger.debug("sql: " + sql);
         NativeQuery query = this.createSQLQuery(sql, values);
-        query.unwrap(NativeQueryImpl.class).setResultTransformer(Criteria.ALIAS_TO_ENTITY_MAP);
+        query.unwrap(NativeQueryImpl.class).setResultTransformer(mapTransformer());
         List<Map<String, Object>> result = query.list();
 
         logger.debug("size: " + result.size());
         return result;
     }
 
+    /**
+     * 按列读取sql查询结果，整数、浮点及日期列直接读取为基本类型数组，不为每行创建对象，适用于报表等大数据量统计查询。
+     * 直接使用jdbc执行，执行前flush session，按{@link #getStreamFetchSize()}设置fetch size
+     *
+     * @param sql
+     * @param values 按位置绑定的参数
+     * @return
+     * @author songlin
+     * @see ColumnarResult
+     */
+    protected ColumnarResult queryColumnar(String sql, Object... values) {
+        List<ColumnarResult> result = new ArrayList<>(1);
+        queryColumnar(sql, Integer.MAX_VALUE, result::add, values);
+        return result.get(0);
+    }
+
+    /**
+     * 按列分批读取sql查询结果，每读取chunkSize行交给consumer处理一次，consumer处理后可丢弃该批数据，
+     * 结果集远大于内存时使用
+     *
+     * @param sql
+     * @param chunkSize 每批的行数
+     * @param consumer  处理每批数据，没有数据时也会调用一次
+     * @param values    按位置绑定的参数
+     * @author songlin
+     */
+    protected void queryColumnar(String sql, int chunkSize, Consumer<ColumnarResult> consumer, Object... values) {
+        Assert.hasText(sql, "queryString can not be null");
+        Assert.isTrue(chunkSize > 0, "chunkSize must be greater than 0");
+        logger.debug("sql: " + sql);
+        Session session = getSession();
+        session.flush();
+        session.doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(streamFetchSize);
+                if (values != null) {
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] == null) {
+                            ps.setNull(i + 1, Types.NULL);
+                        } else {
+                            ps.setObject(i + 1, values[i]);
+                        }
+                    }
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    ColumnarResult chunk = ColumnarResult.of(metaData, chunkSize);
+                    boolean consumed = false;
+                    while (rs.next()) {
+                        chunk.read(rs);
+                        if (chunk.getRowCount() == chunkSize) {
+                            consumer.accept(chunk);
+                            consumed = true;
+                            chunk = ColumnarResult.of(metaData, chunkSize);
+                        }
+                    }
+                    if (chunk.getRowCount() > 0 || !consumed) {
+                        consumer.accept(chunk);
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * get unique result by sql, if result is empty then return null
      *
@@ -677,12 +1736,11 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         if (clazz == null) {
             query = this.createSQLQuery(sql, values);
         } else {
-            Entity entity = clazz.getAnnotation(Entity.class);
-            if (entity != null) {
+            if (isEntityClass(clazz)) {
                 query = this.createSQLQuery(sql, clazz, values);
             } else {
                 query = this.createSQLQuery(sql, values);
-                query.unwrap(NativeQueryImpl.class).setResultTransformer(Transformers.aliasToBean(clazz));
+                query.unwrap(NativeQueryImpl.class).setResultTransformer(beanTransformer(clazz));
             }
         }
         List<X> result = query.list();
@@ -715,12 +1773,11 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         if (clazz == null) {
             query = this.createSQLQuery(sql, values);
         } else {
-            Entity entity = clazz.getAnnotation(Entity.class);
-            if (entity != null) {
+            if (isEntityClass(clazz)) {
                 query = this.createSQLQuery(sql, clazz, values);
             } else {
                 query = this.createSQLQuery(sql, values);
-                query.unwrap(NativeQueryImpl.class).setResultTransformer(Transformers.aliasToBean(clazz));
+                query.unwrap(NativeQueryImpl.class).setResultTransformer(beanTransformer(clazz));
             }
         }
         List<X> result = query.list();
@@ -728,6 +1785,115 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
         return result;
     }
 
+    /**
+     * HQL流式查询
+     *
+     * @param hql
+     * @param values Variable number of parameters, in order to bind.
+     * @return
+     * @see #stream(Conditions...)
+     */
+    protected <X> Stream<X> streamHql(String hql, Object... values) {
+        return stream(createQuery(hql, values));
+    }
+
+    /**
+     * HQL流式查询
+     *
+     * @param hql
+     * @param values Named parameters, bind by name.
+     * @return
+     * @see #stream(Conditions...)
+     */
+    protected <X> Stream<X> streamHql(String hql, Map<String, ?> values) {
+        return stream(createQuery(hql, values));
+    }
+
+    /**
+     * sql流式查询
+     *
+     * @param sql
+     * @param values
+     * @return
+     * @see #stream(Conditions...)
+     */
+    protected <X> Stream<X> streamSql(String sql, Object... values) {
+        logger.debug("sql: " + sql);
+        return stream(this.createSQLQuery(sql, values));
+    }
+
+    /**
+     * sql流式查询，clazz为实体时返回实体，否则按别名转换为clazz对象
+     *
+     * @param sql
+     * @param clazz
+     * @param values
+     * @return
+     * @see #stream(Conditions...)
+     */
+    protected <X> Stream<X> streamSql(String sql, Class<X> clazz, Object... values) {
+        logger.debug("sql: " + sql);
+        NativeQuery<X> query = null;
+        if (isEntityClass(clazz)) {
+            query = this.createSQLQuery(sql, clazz, values);
+        } else {
+            query = this.createSQLQuery(sql, values);
+            query.unwrap(NativeQueryImpl.class).setResultTransformer(beanTransformer(clazz));
+        }
+        return stream(query);
+    }
+
+    /**
+     * 以只进游标读取查询结果，每{@link #getStreamEvictSize()}行从session中清除流加载的实体，
+     * 流打开前已在session中的实体不会被清除。Stream关闭时关闭游标
+     *
+     * @param query
+     * @return
+     * @author songlin
+     */
+    protected <X> Stream<X> stream(final Query<X> query) {
+        final SessionImplementor session = (SessionImplementor) getSession();
+        final Set<Object> managed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+            managed.add(entry.getKey());
+        }
+        query.setFetchSize(getStreamFetchSize());
+        final ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        Iterator<X> iterator = new Iterator<X>() {
+            private final List<Object> consumed = new ArrayList<>(getStreamEvictSize());
+
+            private Boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (hasNext == null) {
+                    hasNext = results.next();
+                }
+                return hasNext;
+            }
+
+            @Override
+            public X next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                hasNext = null;
+                if (consumed.size() >= getStreamEvictSize()) {
+                    consumed.forEach(session::evict);
+                    consumed.clear();
+                }
+                Object[] row = results.get();
+                for (Object value : row) {
+                    if (value != null && !managed.contains(value) && session.getPersistenceContext().getEntry(value) != null) {
+                        consumed.add(value);
+                    }
+                }
+                return (X) (row.length == 1 ? row[0] : row);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false).onClose(results::close);
+    }
+
     /**
      * same as createSQLQuery(sql, values).executeUpdate()
      *
@@ -736,8 +1902,8 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
     protected void queryUpdate(String sql, Object... values) {
         logger.debug("sql: " + sql);
         int result = this.createSQLQuery(sql, values).executeUpdate();
+        invalidateCountCache();
         logger.debug("size: " + result);
-
     }
 
     /**
@@ -748,6 +1914,7 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
     protected void queryUpdate(String sql, Map<String, ?> values) {
         logger.debug("sql: " + sql);
         int result = this.createSQLQuery(sql, values).executeUpdate();
+        invalidateCountCache();
         logger.debug("size: " + result);
     }
 
@@ -773,6 +1940,23 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * @author songlin
      */
     protected <X> Pages<X> findPageBySql(final Pages<X> page, final Class<X> clas, final String sql, final Object... values) {
+        return findPageBySql(page, (Keyset) null, clas, sql, values);
+    }
+
+    /**
+     * 支持简单的Conditions 赋值查询，keyset为空时按offset分页，否则按keyset分页，
+     * keyset分页时外层包装查询，排序字段按结果列名（去掉别名前缀）比较。
+     *
+     * @param page
+     * @param keyset keyset分页游标，查询后设置下一页的游标
+     * @param clas
+     * @param sql
+     * @param values
+     * @return
+     * @author songlin
+     * @see Keyset
+     */
+    protected <X> Pages<X> findPageBySql(final Pages<X> page, final Keyset keyset, final Class<X> clas, final String sql, final Object... values) {
         int classNameIndex = sql.toLowerCase().indexOf("from");
         if (classNameIndex == -1) {
             return null;
@@ -782,33 +1966,54 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
          * 动态拼接参数
          */
         List<Object> paramValue = ListUtil.arrayToList(values);
-        String querySql = PageSQLHandler.dualDynamicCondition(sql, page.getConditions(), paramValue);
+        final Sort sort = keyset == null ? page.getSort() : null;
+        DynamicConditionCache.Rewrite rewrite = dynamicConditionCache.rewrite(sql, page.getConditions(), sort, paramValue, query -> appendOrderBy(query, sort));
+        String querySql = rewrite.getQuery();
         if (ListUtil.isNotEmpty(paramValue)) {
             logger.debug("array param:{}", ToStringBuilder.reflectionToString(values));
         }
-        if (page.isAutoCount()) {
-            long totalCount = countSQLResult(querySql, paramValue.toArray());
-            page.setTotalCount(totalCount);
-            if (totalCount == 0) {
-                return page;
-            }
+        final Supplier<Long> counter = countSupplier(sql, page, values, false, querySql, paramValue.toArray());
+        List<SeekKey> seekKeys = null;
+        if (keyset != null) {
+            seekKeys = buildSqlSeekKeys(page.getSort(), keyset);
+            querySql = appendKeysetCondition("select * from (" + querySql + ") kp", seekKeys, keyset, "kp.", value -> {
+                paramValue.add(value);
+                return "?";
+            });
+            querySql = appendKeysetOrderBy(querySql, seekKeys, "kp.");
+        } else {
+            querySql = rewrite.getPagedQuery();
+        }
+        String windowSql = isWindowCountSupported(page, keyset) ? appendWindowCount(querySql, false) : null;
+        if (windowSql != null) {
+            NativeQuery<X> wq = createSQLQuery(windowSql, paramValue.toArray());
+            WindowCountTransformer transformer = setWindowCountTransformer(wq, clas);
+            setPageParameterToQuery(wq, page);
+            List<X> result = wq.list();
+            page.setTotalCount(resolveWindowCount(page, transformer.getTotalCount(), counter));
+            page.setResult(result);
+            return page;
         }
-        querySql += appendOrderBy(querySql, page.getSort());
         NativeQuery q = null;
         if (clas != null) {
-            Entity entity = clas.getAnnotation(Entity.class);
-            if (entity != null) {
+            if (isEntityClass(clas)) {
                 q = createSQLQuery(querySql, clas, paramValue.toArray());
             } else {
                 q = createSQLQuery(querySql, paramValue.toArray());
-                q.unwrap(NativeQueryImpl.class).setResultTransformer(Transformers.aliasToBean(clas));
+                q.unwrap(NativeQueryImpl.class).setResultTransformer(beanTransformer(clas));
             }
         } else {
             q = createSQLQuery(querySql, paramValue.toArray());
-            q.unwrap(NativeQueryImpl.class).setResultTransformer(Transformers.ALIAS_TO_ENTITY_MAP);
+            q.unwrap(NativeQueryImpl.class).setResultTransformer(mapTransformer());
         }
-        setPageParameterToQuery(q, page);
-        page.setResult(q.list());
+        setPageParameterToQuery(q, page, keyset);
+        final Query<X> pageQuery = q;
+        List<X> result = countAndFetch(page, counter, pageQuery::list);
+        if (result == null) {
+            return page;
+        }
+        page.setResult(result);
+        setNextKeyset(keyset, seekKeys, result, page);
         return page;
     }
 
@@ -817,6 +2022,19 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
     }
 
     protected <X> Pages<X> findPageBySql(final Pages<X> page, final Class<X> clas, final String sql, final Map<String, ?> values) {
+        return findPageBySql(page, (Keyset) null, clas, sql, values);
+    }
+
+    /**
+     * @param page
+     * @param keyset keyset分页游标，查询后设置下一页的游标
+     * @param clas
+     * @param sql
+     * @param values
+     * @return
+     * @see #findPageBySql(Pages, Keyset, Class, String, Object...)
+     */
+    protected <X> Pages<X> findPageBySql(final Pages<X> page, final Keyset keyset, final Class<X> clas, final String sql, final Map<String, ?> values) {
         Assert.notNull(page, "page can not be null");
 
         int classNameIndex = sql.toLowerCase().indexOf("from");
@@ -826,37 +2044,68 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
          * 动态拼接参数
          */
         Map<String, Object> paramValue = Maps.newHashMap(values);
-        String querySql = PageSQLHandler.dualDynamicCondition(sql, page.getConditions(), paramValue);
+        final Sort sort = keyset == null ? page.getSort() : null;
+        DynamicConditionCache.Rewrite rewrite = dynamicConditionCache.rewrite(sql, page.getConditions(), sort, paramValue, query -> appendOrderBy(query, sort));
+        String querySql = rewrite.getQuery();
         if (MapUtil.isNotEmpty(paramValue)) {
             logger.debug("map param:{}", ToStringBuilder.reflectionToString(values));
         }
-        if (page.isAutoCount()) {
-            long totalCount = countSQLResult(querySql, paramValue);
-            page.setTotalCount(totalCount);
-            if (totalCount == 0) {
-                return page;
-            }
+        final Supplier<Long> counter = countSupplier(sql, page, values, false, querySql, Maps.newHashMap(paramValue));
+        List<SeekKey> seekKeys = null;
+        if (keyset != null) {
+            seekKeys = buildSqlSeekKeys(page.getSort(), keyset);
+            querySql = appendKeysetCondition("select * from (" + querySql + ") kp", seekKeys, keyset, "kp.", namedKeysetBinder(paramValue));
+            querySql = appendKeysetOrderBy(querySql, seekKeys, "kp.");
+        } else {
+            querySql = rewrite.getPagedQuery();
         }
-        querySql += appendOrderBy(querySql, page.getSort());
 
+        String windowSql = isWindowCountSupported(page, keyset) ? appendWindowCount(querySql, false) : null;
+        if (windowSql != null) {
+            NativeQuery<X> wq = createSQLQuery(windowSql, paramValue);
+            WindowCountTransformer transformer = setWindowCountTransformer(wq, clas);
+            setPageParameterToQuery(wq, page);
+            List<X> result = wq.list();
+            page.setTotalCount(resolveWindowCount(page, transformer.getTotalCount(), counter));
+            page.setResult(result);
+            return page;
+        }
         Query q = null;
         if (clas != null) {
-            Entity entity = clas.getAnnotation(Entity.class);
-            if (entity != null) {
+            if (isEntityClass(clas)) {
                 q = createSQLQuery(querySql, clas, paramValue);
             } else {
                 q = createSQLQuery(querySql, paramValue);
-                q.unwrap(NativeQueryImpl.class).setResultTransformer(Transformers.aliasToBean(clas));
+                q.unwrap(NativeQueryImpl.class).setResultTransformer(beanTransformer(clas));
             }
         } else {
             q = createSQLQuery(querySql, paramValue);
-            q.unwrap(NativeQueryImpl.class).setResultTransformer(Transformers.ALIAS_TO_ENTITY_MAP);
+            q.unwrap(NativeQueryImpl.class).setResultTransformer(mapTransformer());
         }
-        setPageParameterToQuery(q, page);
-        page.setResult(q.list());
+        setPageParameterToQuery(q, page, keyset);
+        final Query<X> pageQuery = q;
+        List<X> result = countAndFetch(page, counter, pageQuery::list);
+        if (result == null) {
+            return page;
+        }
+        page.setResult(result);
+        setNextKeyset(keyset, seekKeys, result, page);
         return page;
     }
 
+    /**
+     * sql keyset分页的排序字段为外层查询的结果列名，去掉别名前缀
+     */
+    private List<SeekKey> buildSqlSeekKeys(final Sort sort, final Keyset keyset) {
+        Assert.isTrue(StringUtil.isNotBlank(keyset.getIdProperty()), "keyset idProperty must be the id column of the sql");
+        List<SeekKey> seekKeys = Lists.newArrayList();
+        for (SeekKey seekKey : buildSeekKeys(sort, keyset)) {
+            String column = seekKey.getProperty().contains(".") ? StringUtils.substringAfterLast(seekKey.getProperty(), ".") : seekKey.getProperty();
+            seekKeys.add(new SeekKey(column, seekKey.isAscending()));
+        }
+        return seekKeys;
+    }
+
 
     /**
      * @param propertyName
@@ -884,7 +2133,7 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * @return
      */
     public List<T> find(Conditions... conditions) {
-        return find(createCriteriaQuery(null, conditions));
+        return createConditionsQuery(null, conditions).list();
     }
 
     /**
@@ -894,7 +2143,30 @@ public class SupportHibernateDao<T, PK extends Serializable> extends SimpleHiber
      * @return
      */
     public T findUnique(Conditions... conditions) {
-        return findUnique(createCriteriaQuery(null, conditions));
+        return createConditionsQuery(null, conditions).uniqueResult();
+    }
+
+    /**
+     * 流式查询，结果不会一次性加载到内存，适用于导出等大数据量场景。
+     * 必须在事务内消费并关闭Stream（try-with-resources），已读取的实体会定期从session中清除，
+     * 清除后的实体为游离状态，不能再延迟加载。
+     *
+     * @param conditions
+     * @return
+     * @author songlin
+     */
+    public Stream<T> stream(Conditions... conditions) {
+        return stream((Sort) null, conditions);
+    }
+
+    /**
+     * @param sort
+     * @param conditions
+     * @return
+     * @see #stream(Conditions...)
+     */
+    public Stream<T> stream(Sort sort, Conditions... conditions) {
+        return stream(createConditionsQuery(sort, conditions));
     }
 
     /**
@@ -8,31 +8,552 @@
 */
 package cn.wuxia.common.hibernate.dao;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
+import org.apache.commons.lang3.ClassUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.PropertyNotFoundException;
 import org.hibernate.transform.ResultTransformer;
 
-public class TransformerToBean implements ResultTransformer{
+/**
+ * 将sql查询结果按别名转换为DTO，代替{@link org.hibernate.transform.Transformers#aliasToBean(Class)}。
+ * <ul>
+ * <li>每个类的setter/字段只解析一次（按类缓存在{@link ClassValue}中，不阻止类卸载），通过{@link LambdaMetafactory}生成setter的调用（不能生成时使用{@link MethodHandle}），
+ * 不再每行反射查找及调用</li>
+ * <li>同一组别名只匹配一次，别名匹配忽略大小写及下划线，如 USER_NAME、user_name 均对应 userName</li>
+ * <li>值的类型与属性不一致时按常用规则转换（数字、布尔、字符串、日期、枚举），转换规则按值的类型缓存</li>
+ * <li>没有对应属性的别名抛出{@link PropertyNotFoundException}，与aliasToBean一致；值无法转换时抛出带别名的{@link HibernateException}</li>
+ * </ul>
+ *
+ * @author songlin
+ */
+public class TransformerToBean implements ResultTransformer {
 
     /**
      * Comment for <code>serialVersionUID</code>
      */
     private static final long serialVersionUID = -3116596466030859560L;
 
-    public TransformerToBean(Class resultClass) {
+    private static final ClassValue<BeanInfo> BEANS = new ClassValue<BeanInfo>() {
+        @Override
+        protected BeanInfo computeValue(Class<?> type) {
+            return new BeanInfo(type);
+        }
+    };
+
+    /**
+     * JDK9+的MethodHandles.privateLookupIn，JDK8时为null
+     */
+    private static final Method PRIVATE_LOOKUP_IN = privateLookupIn();
+
+    private final Class<?> resultClass;
 
+    private transient BeanInfo beanInfo;
+
+    private transient volatile AliasWriters lastWriters;
+
+    public TransformerToBean(Class resultClass) {
+        if (resultClass == null) {
+            throw new IllegalArgumentException("resultClass cannot be null");
+        }
+        this.resultClass = resultClass;
     }
 
     @Override
     public Object transformTuple(Object[] tuple, String[] aliases) {
-        // TODO Auto-generated method stub
-        return null;
+        Writer[] writers = writers(aliases);
+        Object bean = beanInfo().newInstance();
+        for (int i = 0; i < writers.length && i < tuple.length; i++) {
+            if (writers[i] != null) {
+                writers[i].write(bean, tuple[i]);
+            }
+        }
+        return bean;
     }
 
     @Override
     public List transformList(List collection) {
-        // TODO Auto-generated method stub
-        return null;
+        return collection;
+    }
+
+    private BeanInfo beanInfo() {
+        BeanInfo info = beanInfo;
+        if (info == null) {
+            info = BEANS.get(resultClass);
+            beanInfo = info;
+        }
+        return info;
+    }
+
+    /**
+     * hibernate每行传入同一个别名数组，别名与上一行相同时直接使用上次的匹配结果
+     */
+    private Writer[] writers(String[] aliases) {
+        AliasWriters last = lastWriters;
+        if (last != null && (last.aliases == aliases || Arrays.equals(last.aliases, aliases))) {
+            return last.writers;
+        }
+        Writer[] writers = beanInfo().writers(aliases);
+        lastWriters = new AliasWriters(aliases, writers);
+        return writers;
+    }
+
+    private static Method privateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 目标类的lookup，生成的setter类定义在目标类所在的类加载器中，不引用本类的类加载器；
+     * 不能获取时（JDK8、模块未开放）使用本类的lookup
+     */
+    static MethodHandles.Lookup lookupIn(Class<?> targetClass) {
+        if (PRIVATE_LOOKUP_IN != null) {
+            try {
+                return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, targetClass, MethodHandles.lookup());
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // 使用本类的lookup
+            }
+        }
+        return MethodHandles.lookup();
     }
 
+    /**
+     * 忽略大小写及下划线
+     */
+    static String normalize(String name) {
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '_') {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o != null && getClass() == o.getClass() && resultClass.equals(((TransformerToBean) o).resultClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return resultClass.hashCode();
+    }
+
+    /**
+     * 别名及对应的属性，作为一个整体替换
+     */
+    private static final class AliasWriters {
+
+        private final String[] aliases;
+
+        private final Writer[] writers;
+
+        AliasWriters(String[] aliases, Writer[] writers) {
+            this.aliases = aliases;
+            this.writers = writers;
+        }
+    }
+
+    /**
+     * 类的构造方法及可写属性
+     */
+    private static class BeanInfo {
+
+        private final Class<?> beanClass;
+
+        private final MethodHandle constructor;
+
+        private final Map<String, Writer> writers = new HashMap<>();
+
+        private final ConcurrentMap<String, Writer[]> aliasWriters = new ConcurrentHashMap<>();
+
+        BeanInfo(Class<?> beanClass) {
+            this.beanClass = beanClass;
+            try {
+                java.lang.reflect.Constructor<?> ctor = beanClass.getDeclaredConstructor();
+                ctor.setAccessible(true);
+                this.constructor = MethodHandles.lookup().unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+                throw new HibernateException("Could not instantiate resultclass: " + beanClass.getName(), e);
+            }
+            // 字段在前，setter覆盖同名字段
+            for (Class<?> clazz = beanClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                        continue;
+                    }
+                    writers.putIfAbsent(normalize(field.getName()), Writer.of(field));
+                }
+            }
+            for (Method method : beanClass.getMethods()) {
+                if (method.getName().length() > 3 && method.getName().startsWith("set") && method.getParameterCount() == 1
+                        && !Modifier.isStatic(method.getModifiers())) {
+                    Writer writer = Writer.of(beanClass, method);
+                    if (writer != null) {
+                        writers.put(normalize(method.getName().substring(3)), writer);
+                    }
+                }
+            }
+        }
+
+        Object newInstance() {
+            try {
+                return constructor.invokeExact();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new HibernateException("Could not instantiate resultclass: " + beanClass.getName(), e);
+            }
+        }
+
+        Writer[] writers(String[] aliases) {
+            return aliasWriters.computeIfAbsent(String.join(",", Arrays.asList(aliases)), key -> {
+                Writer[] result = new Writer[aliases.length];
+                for (int i = 0; i < aliases.length; i++) {
+                    if (aliases[i] == null) {
+                        continue;
+                    }
+                    Writer writer = writers.get(normalize(aliases[i]));
+                    if (writer == null) {
+                        throw new PropertyNotFoundException("Could not resolve PropertyAccess for " + aliases[i] + " on " + beanClass.getName());
+                    }
+                    // 每个别名使用独立的转换缓存
+                    result[i] = writer.copy(aliases[i]);
+                }
+                return result;
+            });
+        }
+    }
+
+    /**
+     * 写入一个属性，缓存最近一次值类型的转换规则
+     */
+    private static class Writer {
+
+        private final String name;
+
+        /**
+         * 对应的别名，属性未绑定别名时为null
+         */
+        private final String alias;
+
+        private final BiConsumer<Object, Object> setter;
+
+        private final MethodHandle handle;
+
+        private final Class<?> type;
+
+        private final boolean primitive;
+
+        /**
+         * 值类型及转换规则放在同一个对象中，并发写入时不会读到不匹配的组合
+         */
+        private volatile Conversion lastConversion;
+
+        private Writer(String name, String alias, BiConsumer<Object, Object> setter, MethodHandle handle, Class<?> type) {
+            this.name = name;
+            this.alias = alias;
+            this.setter = setter;
+            this.handle = handle;
+            this.primitive = type.isPrimitive();
+            this.type = ClassUtils.primitiveToWrapper(type);
+        }
+
+        Writer copy(String alias) {
+            return new Writer(name, alias, setter, handle, primitive ? ClassUtils.wrapperToPrimitive(type) : type);
+        }
+
+        static Writer of(Field field) {
+            try {
+                MethodHandle handle;
+                try {
+                    handle = lookupIn(field.getDeclaringClass()).unreflectSetter(field);
+                } catch (IllegalAccessException e) {
+                    field.setAccessible(true);
+                    handle = MethodHandles.lookup().unreflectSetter(field);
+                }
+                return new Writer(field.getName(), null, null, handle.asType(MethodType.methodType(void.class, Object.class, Object.class)), field.getType());
+            } catch (IllegalAccessException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        static Writer of(Class<?> beanClass, Method method) {
+            Class<?> type = method.getParameterTypes()[0];
+            MethodHandles.Lookup lookup = lookupIn(beanClass);
+            MethodHandle handle;
+            try {
+                handle = lookup.unreflect(method);
+            } catch (IllegalAccessException e) {
+                // 目标类的lookup无法访问时（如public方法声明在不可访问的父类中）通过反射取得访问权限
+                try {
+                    method.setAccessible(true);
+                    handle = MethodHandles.lookup().unreflect(method);
+                } catch (IllegalAccessException | RuntimeException ex) {
+                    return null;
+                }
+                return new Writer(method.getName(), null, null, handle.asType(MethodType.methodType(void.class, Object.class, Object.class)), type);
+            }
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class), handle,
+                        MethodType.methodType(void.class, beanClass, ClassUtils.primitiveToWrapper(type)));
+                return new Writer(method.getName(), null, (BiConsumer<Object, Object>) site.getTarget().invoke(), null, type);
+            } catch (Throwable e) {
+                // 类不可访问等情况使用MethodHandle
+                return new Writer(method.getName(), null, null, handle.asType(MethodType.methodType(void.class, Object.class, Object.class)), type);
+            }
+        }
+
+        void write(Object bean, Object value) {
+            if (value != null && !type.isInstance(value)) {
+                try {
+                    value = convert(value);
+                } catch (RuntimeException e) {
+                    throw new HibernateException("Could not convert value [" + value + "] of alias [" + alias + "] to " + type.getName() + " for property ["
+                            + name + "] of " + bean.getClass().getName(), e);
+                }
+            }
+            if (value == null && primitive) {
+                return;
+            }
+            try {
+                if (setter != null) {
+                    setter.accept(bean, value);
+                } else {
+                    handle.invokeExact(bean, value);
+                }
+            } catch (RuntimeException e) {
+                throw new HibernateException("Could not set property [" + name + "] of " + bean.getClass().getName() + " with value " + value, e);
+            } catch (Throwable e) {
+                throw new HibernateException("Could not set property [" + name + "] of " + bean.getClass().getName(), e);
+            }
+        }
+
+        private Object convert(Object value) {
+            Class<?> valueClass = value.getClass();
+            Conversion conversion = lastConversion;
+            if (conversion == null || conversion.valueClass != valueClass) {
+                conversion = new Conversion(valueClass, Converter.of(valueClass, type));
+                lastConversion = conversion;
+            }
+            return conversion.converter.convert(value, type);
+        }
+    }
+
+    /**
+     * 值类型及对应的转换规则
+     */
+    private static final class Conversion {
+
+        private final Class<?> valueClass;
+
+        private final Converter converter;
+
+        Conversion(Class<?> valueClass, Converter converter) {
+            this.valueClass = valueClass;
+            this.converter = converter;
+        }
+    }
+
+    /**
+     * 常用的类型转换
+     */
+    private enum Converter {
+        NONE {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return value;
+            }
+        },
+        NUMBER {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                Number number = (Number) value;
+                if (type == Long.class) {
+                    return number.longValue();
+                } else if (type == Integer.class) {
+                    return number.intValue();
+                } else if (type == Double.class) {
+                    return number.doubleValue();
+                } else if (type == Float.class) {
+                    return number.floatValue();
+                } else if (type == Short.class) {
+                    return number.shortValue();
+                } else if (type == Byte.class) {
+                    return number.byteValue();
+                } else if (type == BigDecimal.class) {
+                    return number instanceof BigInteger ? new BigDecimal((BigInteger) number) : new BigDecimal(number.toString());
+                } else if (type == BigInteger.class) {
+                    return number instanceof BigDecimal ? ((BigDecimal) number).toBigInteger() : BigInteger.valueOf(number.longValue());
+                }
+                return value;
+            }
+        },
+        NUMBER_TO_BOOLEAN {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return ((Number) value).intValue() != 0;
+            }
+        },
+        STRING_TO_BOOLEAN {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                String text = value.toString().trim();
+                return "1".equals(text) || "true".equalsIgnoreCase(text) || "y".equalsIgnoreCase(text) || "yes".equalsIgnoreCase(text);
+            }
+        },
+        STRING_TO_NUMBER {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                String text = value.toString().trim();
+                return text.isEmpty() ? null : NUMBER.convert(new BigDecimal(text), type);
+            }
+        },
+        STRING_TO_CHARACTER {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                String text = value.toString();
+                return text.isEmpty() ? null : text.charAt(0);
+            }
+        },
+        CLOB_TO_STRING {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                Clob clob = (Clob) value;
+                try {
+                    return clob.getSubString(1, (int) clob.length());
+                } catch (SQLException e) {
+                    throw new HibernateException("Could not read clob", e);
+                }
+            }
+        },
+        TO_STRING {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return value.toString();
+            }
+        },
+        TO_ENUM {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Object convert(Object value, Class<?> type) {
+                if (value instanceof Number) {
+                    return type.getEnumConstants()[((Number) value).intValue()];
+                }
+                return Enum.valueOf((Class<? extends Enum>) type, value.toString().trim());
+            }
+        },
+        DATE_TO_LOCAL_DATE_TIME {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return value instanceof java.sql.Timestamp ? ((java.sql.Timestamp) value).toLocalDateTime()
+                        : LocalDateTime.ofInstant(((Date) value).toInstant(), java.time.ZoneId.systemDefault());
+            }
+        },
+        DATE_TO_LOCAL_DATE {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return value instanceof java.sql.Date ? ((java.sql.Date) value).toLocalDate() : ((LocalDateTime) DATE_TO_LOCAL_DATE_TIME.convert(value, type)).toLocalDate();
+            }
+        },
+        DATE_TO_LOCAL_TIME {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return value instanceof java.sql.Time ? ((java.sql.Time) value).toLocalTime() : ((LocalDateTime) DATE_TO_LOCAL_DATE_TIME.convert(value, type)).toLocalTime();
+            }
+        },
+        DATE_TO_INSTANT {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return ((Date) value).toInstant();
+            }
+        },
+        LOCAL_DATE_TIME_TO_DATE {
+            @Override
+            Object convert(Object value, Class<?> type) {
+                return java.sql.Timestamp.valueOf((LocalDateTime) value);
+            }
+        };
+
+        abstract Object convert(Object value, Class<?> type);
+
+        static Converter of(Class<?> valueClass, Class<?> type) {
+            if (Number.class.isAssignableFrom(valueClass)) {
+                if (type == Boolean.class) {
+                    return NUMBER_TO_BOOLEAN;
+                }
+                if (Number.class.isAssignableFrom(type)) {
+                    return NUMBER;
+                }
+            }
+            if (Date.class.isAssignableFrom(valueClass)) {
+                if (type == LocalDateTime.class) {
+                    return DATE_TO_LOCAL_DATE_TIME;
+                } else if (type == LocalDate.class) {
+                    return DATE_TO_LOCAL_DATE;
+                } else if (type == LocalTime.class) {
+                    return DATE_TO_LOCAL_TIME;
+                } else if (type == Instant.class) {
+                    return DATE_TO_INSTANT;
+                }
+            }
+            if (valueClass == LocalDateTime.class && type.isAssignableFrom(java.sql.Timestamp.class)) {
+                return LOCAL_DATE_TIME_TO_DATE;
+            }
+            if (Clob.class.isAssignableFrom(valueClass) && type == String.class) {
+                return CLOB_TO_STRING;
+            }
+            if (type.isEnum()) {
+                return TO_ENUM;
+            }
+            if (valueClass == String.class || valueClass == Character.class) {
+                if (type == Boolean.class) {
+                    return STRING_TO_BOOLEAN;
+                } else if (Number.class.isAssignableFrom(type)) {
+                    return STRING_TO_NUMBER;
+                } else if (type == Character.class) {
+                    return STRING_TO_CHARACTER;
+                }
+            }
+            if (type == String.class) {
+                return TO_STRING;
+            }
+            return NONE;
+        }
+    }
 }
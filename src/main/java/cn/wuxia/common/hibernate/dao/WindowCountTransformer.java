@@ -0,0 +1,68 @@
+package cn.wuxia.common.hibernate.dao;
+
+import cn.wuxia.common.util.NumberUtil;
+import org.hibernate.transform.ResultTransformer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 处理最后一列为 count(*) over() 的查询结果：读取总数后去掉该列，再交给delegate转换。
+ *
+ * @author songlin
+ */
+public class WindowCountTransformer implements ResultTransformer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ResultTransformer delegate;
+
+    private long totalCount = -1;
+
+    private String[] lastAliases;
+
+    private String[] strippedAliases;
+
+    /**
+     * @param delegate 去掉总数列后的结果转换，为空时单列返回该列的值，多列返回数组
+     */
+    public WindowCountTransformer(ResultTransformer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        totalCount = NumberUtil.toLong(tuple[tuple.length - 1], 0L);
+        Object[] values = Arrays.copyOf(tuple, tuple.length - 1);
+        if (delegate != null) {
+            return delegate.transformTuple(values, strip(aliases));
+        }
+        return values.length == 1 ? values[0] : values;
+    }
+
+    /**
+     * 去掉总数列的别名，hibernate每行传入同一个别名数组，只复制一次
+     */
+    private String[] strip(String[] aliases) {
+        if (aliases == null) {
+            return null;
+        }
+        if (aliases != lastAliases) {
+            lastAliases = aliases;
+            strippedAliases = Arrays.copyOf(aliases, aliases.length - 1);
+        }
+        return strippedAliases;
+    }
+
+    @Override
+    public List transformList(List collection) {
+        return delegate != null ? delegate.transformList(collection) : collection;
+    }
+
+    /**
+     * @return 总数，没有结果时为-1
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+}
@@ -0,0 +1,88 @@
+package cn.wuxia.common.hibernate;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+
+/**
+ * 测试用的H2（MySQL模式）内存库SessionFactory，current session绑定到线程
+ *
+ * @author songlin
+ */
+public final class H2SessionFactory {
+
+    private H2SessionFactory() {
+    }
+
+    public static SessionFactory build(String name, Class<?>... entities) {
+        return build(name, EnhancementDialect.class, entities);
+    }
+
+    /**
+     * 表结构由H2Dialect生成（MySQLDialect的 type=MyISAM 等H2不支持），再以指定的dialect创建SessionFactory
+     */
+    public static SessionFactory build(String name, Class<? extends Dialect> dialect, Class<?>... entities) {
+        configuration(name, H2Dialect.class, "create", entities).buildSessionFactory().close();
+        return configuration(name, dialect, "none", entities).buildSessionFactory();
+    }
+
+    /**
+     * 开启二级缓存（ehcache），所有实体都使用缓存
+     */
+    public static SessionFactory buildCached(String name, Class<?>... entities) {
+        configuration(name, H2Dialect.class, "create", entities).buildSessionFactory().close();
+        Configuration configuration = configuration(name, EnhancementDialect.class, "none", entities);
+        configuration.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true");
+        configuration.setProperty(AvailableSettings.CACHE_REGION_FACTORY, "ehcache");
+        configuration.setProperty(AvailableSettings.JPA_SHARED_CACHE_MODE, "ALL");
+        return configuration.buildSessionFactory();
+    }
+
+    private static Configuration configuration(String name, Class<? extends Dialect> dialect, String hbm2ddl, Class<?>... entities) {
+        Configuration configuration = new Configuration();
+        configuration.setProperty(AvailableSettings.DRIVER, "org.h2.Driver");
+        configuration.setProperty(AvailableSettings.URL, "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        configuration.setProperty(AvailableSettings.USER, "sa");
+        configuration.setProperty(AvailableSettings.PASS, "");
+        configuration.setProperty(AvailableSettings.DIALECT, dialect.getName());
+        configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, hbm2ddl);
+        configuration.setProperty(AvailableSettings.CURRENT_SESSION_CONTEXT_CLASS, "thread");
+        configuration.setProperty(AvailableSettings.POOL_SIZE, "4");
+        for (Class<?> entity : entities) {
+            configuration.addAnnotatedClass(entity);
+        }
+        return configuration;
+    }
+
+    /**
+     * 在current session的事务中执行，正常结束时提交
+     */
+    public static <X> X inTransaction(SessionFactory sessionFactory, Function<Session, X> action) {
+        Session session = sessionFactory.getCurrentSession();
+        Transaction transaction = session.beginTransaction();
+        try {
+            X result = action.apply(session);
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        }
+    }
+
+    public static void doInTransaction(SessionFactory sessionFactory, Consumer<Session> action) {
+        inTransaction(sessionFactory, session -> {
+            action.accept(session);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package cn.wuxia.common.hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+/**
+ * {@link TestCustomer}级联的测试实体
+ *
+ * @author songlin
+ */
+@Entity
+@Table(name = "test_address")
+public class TestAddress {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "test_address_id")
+    @TableGenerator(name = "test_address_id", allocationSize = 50)
+    private Long id;
+
+    private String city;
+
+    public TestAddress() {
+    }
+
+    public TestAddress(String city) {
+        this.city = city;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public void setCity(String city) {
+        this.city = city;
+    }
+}
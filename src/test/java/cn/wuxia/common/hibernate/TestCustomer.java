@@ -0,0 +1,66 @@
+package cn.wuxia.common.hibernate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+/**
+ * 带级联的测试实体
+ *
+ * @author songlin
+ */
+@Entity
+@Table(name = "test_customer")
+public class TestCustomer {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "test_customer_id")
+    @TableGenerator(name = "test_customer_id", allocationSize = 50)
+    private Long id;
+
+    private String name;
+
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "customer_id")
+    private List<TestAddress> addresses = new ArrayList<>();
+
+    public TestCustomer() {
+    }
+
+    public TestCustomer(String name) {
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<TestAddress> getAddresses() {
+        return addresses;
+    }
+
+    public void setAddresses(List<TestAddress> addresses) {
+        this.addresses = addresses;
+    }
+}
@@ -0,0 +1,75 @@
+package cn.wuxia.common.hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+/**
+ * 测试实体
+ *
+ * @author songlin
+ */
+@Entity
+@Table(name = "test_order")
+public class TestOrder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "test_order_id")
+    @TableGenerator(name = "test_order_id", allocationSize = 50)
+    private Long id;
+
+    private String customer;
+
+    private Integer amount;
+
+    private String status;
+
+    public TestOrder() {
+    }
+
+    public TestOrder(String customer, Integer amount, String status) {
+        this.customer = customer;
+        this.amount = amount;
+        this.status = status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(String customer) {
+        this.customer = customer;
+    }
+
+    public Integer getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Integer amount) {
+        this.amount = amount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    @Override
+    public String toString() {
+        return "TestOrder[" + id + "]";
+    }
+}
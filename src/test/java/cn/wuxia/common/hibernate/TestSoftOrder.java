@@ -0,0 +1,63 @@
+package cn.wuxia.common.hibernate;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+import org.hibernate.annotations.SQLDelete;
+import org.hibernate.annotations.Where;
+
+/**
+ * 软删除（{@link SQLDelete}）及{@link Where}的测试实体
+ *
+ * @author songlin
+ */
+@Entity
+@Table(name = "test_soft_order")
+@SQLDelete(sql = "update test_soft_order set deleted = true where id = ?")
+@Where(clause = "deleted = false")
+public class TestSoftOrder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "test_soft_order_id")
+    @TableGenerator(name = "test_soft_order_id", allocationSize = 50)
+    private Long id;
+
+    private String customer;
+
+    private boolean deleted;
+
+    public TestSoftOrder() {
+    }
+
+    public TestSoftOrder(String customer) {
+        this.customer = customer;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(String customer) {
+        this.customer = customer;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+}
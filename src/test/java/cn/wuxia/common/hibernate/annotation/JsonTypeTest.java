@@ -0,0 +1,431 @@
+package cn.wuxia.common.hibernate.annotation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.hibernate.HibernateException;
+import org.hibernate.usertype.DynamicParameterizedType;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+public class JsonTypeTest {
+
+    private static Connection connection;
+
+    @BeforeClass
+    public static void init() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:json_type;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table json_value (text_value clob, blob_value blob)");
+        }
+    }
+
+    @AfterClass
+    public static void destroy() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void immutableValuesAreNotCopied() {
+        JsonType stringType = jsonType(String.class);
+        String text = new String("text");
+        assertSame(text, stringType.deepCopy(text));
+        UUID uuid = UUID.randomUUID();
+        assertSame(uuid, jsonType(UUID.class).deepCopy(uuid));
+        assertNull(stringType.deepCopy(null));
+    }
+
+    @Test
+    public void deepCopyIsIndependent() {
+        JsonType type = jsonType(Payload.class);
+        Payload payload = new Payload("p", 3);
+        Payload copy = (Payload) type.deepCopy(payload);
+        assertNotSame(payload, copy);
+        assertNotSame(payload.getItems(), copy.getItems());
+        assertTrue(type.equals(payload, copy));
+        assertEquals(type.hashCode(payload), type.hashCode(copy));
+        copy.getItems().add(99);
+        copy.getAttributes().put("key0", "changed");
+        assertEquals(3, payload.getItems().size());
+        assertEquals("value0", payload.getAttributes().get("key0"));
+        assertFalse(type.equals(payload, copy));
+    }
+
+    @Test
+    public void registeredCopierIsUsed() {
+        JsonType.registerCopier(CopiedPayload.class, value -> {
+            CopiedPayload copy = new CopiedPayload();
+            copy.setName(value.getName() + "-copy");
+            return copy;
+        });
+        CopiedPayload payload = new CopiedPayload();
+        payload.setName("p");
+        assertEquals("p-copy", ((Payload) jsonType(CopiedPayload.class).deepCopy(payload)).getName());
+    }
+
+    @Test
+    public void equalsUsesValueEquals() {
+        JsonType type = jsonType(ValuePayload.class);
+        ValuePayload a = new ValuePayload("p", 2);
+        ValuePayload b = new ValuePayload("p", 2);
+        assertTrue(type.equals(a, b));
+        assertEquals(type.hashCode(a), type.hashCode(b));
+        b.setName("q");
+        assertFalse(type.equals(a, b));
+        assertFalse(type.equals(a, null));
+        assertTrue(type.equals(null, null));
+    }
+
+    @Test
+    public void equalsComparesSerializedContent() {
+        JsonType type = jsonType(Payload.class);
+        assertTrue(type.equals(new Payload("p", 2), new Payload("p", 2)));
+        assertFalse(type.equals(new Payload("p", 2), new Payload("p", 3)));
+    }
+
+    @Test
+    public void writesRuntimeType() throws SQLException {
+        JsonType type = jsonType(Shape.class);
+        Circle circle = new Circle();
+        circle.setName("c");
+        circle.setRadius(3);
+        write(type, circle, false);
+        assertTrue(((String) readRaw(false)).contains("\"radius\":3"));
+        Shape shape = (Shape) read(type, false);
+        assertTrue(shape instanceof Circle);
+        assertEquals(3, ((Circle) shape).getRadius());
+    }
+
+    @Test
+    public void keepsSubclassFields() throws SQLException {
+        DetailPayload payload = new DetailPayload();
+        payload.setName("p");
+        payload.setDetail("subclass field");
+        write(jsonType(Payload.class), payload, false);
+        assertTrue(((String) readRaw(false)).contains("\"detail\":\"subclass field\""));
+        assertEquals("subclass field", ((DetailPayload) read(jsonType(DetailPayload.class), false)).getDetail());
+    }
+
+    @Test
+    public void detectsFormat() throws IOException {
+        Payload payload = new Payload("p", 2);
+        assertEquals(JsonType.Format.JSON, detect(new ObjectMapper().writeValueAsBytes(payload)));
+        assertEquals(JsonType.Format.JSON, detect("[1,2]".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(JsonType.Format.JSON, detect(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '{', '}' }));
+        assertEquals(JsonType.Format.JSON, detect(new byte[0]));
+        assertEquals(JsonType.Format.SMILE, detect(new ObjectMapper(new SmileFactory()).writeValueAsBytes(payload)));
+        assertEquals(JsonType.Format.CBOR, detect(new ObjectMapper(new CBORFactory()).writeValueAsBytes(payload)));
+        CBORFactory tagged = new CBORFactory();
+        tagged.enable(CBORGenerator.Feature.WRITE_TYPE_HEADER);
+        assertEquals(JsonType.Format.CBOR, detect(new ObjectMapper(tagged).writeValueAsBytes(payload)));
+    }
+
+    @Test
+    public void readsAnyFormatAfterFormatChange() throws SQLException {
+        ValuePayload payload = new ValuePayload("p", 5);
+        for (String format : new String[] { "json", "smile", "cbor" }) {
+            write(jsonType(ValuePayload.class, "type", "2004", "format", format), payload, true);
+            byte[] raw = (byte[]) readRaw(true);
+            assertEquals(format, "smile".equals(format), raw[0] == ':');
+            for (String readFormat : new String[] { "json", "smile", "cbor" }) {
+                assertEquals(payload, read(jsonType(ValuePayload.class, "type", "2004", "format", readFormat), true));
+            }
+        }
+    }
+
+    @Test(expected = HibernateException.class)
+    public void binaryFormatRequiresBlob() {
+        jsonType(Payload.class, "format", "smile");
+    }
+
+    @Test
+    public void detectsCompressionHeader() throws IOException {
+        PushbackInputStream compressed = new PushbackInputStream(new ByteArrayInputStream(new byte[] { JsonType.DeflateCodec.HEADER, 0x78 }), 1);
+        assertTrue(JsonType.Codec.detect(compressed) instanceof JsonType.DeflateCodec);
+        assertEquals(0x78, compressed.read());
+
+        PushbackInputStream plain = new PushbackInputStream(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)), 1);
+        assertNull(JsonType.Codec.detect(plain));
+        assertEquals('{', plain.read());
+
+        PushbackInputStream smile = new PushbackInputStream(new ByteArrayInputStream(new byte[] { ':', ')', '\n' }), 1);
+        assertNull(JsonType.Codec.detect(smile));
+        assertEquals(':', smile.read());
+
+        assertNull(JsonType.Codec.detect(new PushbackInputStream(new ByteArrayInputStream(new byte[0]), 1)));
+    }
+
+    @Test(expected = HibernateException.class)
+    public void unknownCompressionHeaderFails() throws IOException {
+        JsonType.Codec.detect(new PushbackInputStream(new ByteArrayInputStream(new byte[] { JsonType.Codec.MAX_HEADER, 0 }), 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void codecHeaderOutOfRange() {
+        JsonType.registerCodec(new TestCodec((byte) '{'));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void codecHeaderAlreadyUsed() {
+        JsonType.registerCodec(new TestCodec(JsonType.DeflateCodec.HEADER));
+    }
+
+    @Test
+    public void compressesAboveThreshold() throws SQLException {
+        JsonType type = jsonType(ValuePayload.class, "type", "2004", "compress", "deflate", "compressThreshold", "512");
+        JsonType.CompressionStats stats = JsonType.getCompressionStats().get(ValuePayload.class.getName());
+        long writes = stats.getWrites();
+        long compressedWrites = stats.getCompressedWrites();
+
+        ValuePayload large = new ValuePayload("large", 100);
+        write(type, large, true);
+        assertEquals(JsonType.DeflateCodec.HEADER, ((byte[]) readRaw(true))[0]);
+        assertEquals(large, read(type, true));
+        // 未配置压缩的字段同样可以读取
+        assertEquals(large, read(jsonType(ValuePayload.class, "type", "2004"), true));
+
+        ValuePayload small = new ValuePayload("small", 1);
+        write(type, small, true);
+        assertEquals('{', ((byte[]) readRaw(true))[0]);
+        assertEquals(small, read(type, true));
+
+        assertEquals(writes + 2, stats.getWrites());
+        assertEquals(compressedWrites + 1, stats.getCompressedWrites());
+    }
+
+    @Test
+    public void readsUncompressedDataWithCompression() throws SQLException {
+        ValuePayload payload = new ValuePayload("old", 100);
+        write(jsonType(ValuePayload.class, "type", "2004", "format", "smile"), payload, true);
+        assertEquals(payload, read(jsonType(ValuePayload.class, "type", "2004", "compress", "deflate"), true));
+        write(jsonType(ValuePayload.class, "type", "2004", "format", "cbor", "compress", "deflate", "compressThreshold", "0"), payload, true);
+        assertEquals(JsonType.DeflateCodec.HEADER, ((byte[]) readRaw(true))[0]);
+        assertEquals(payload, read(jsonType(ValuePayload.class, "type", "2004"), true));
+    }
+
+    @Test(expected = HibernateException.class)
+    public void compressRequiresBlob() {
+        jsonType(Payload.class, "compress", "deflate");
+    }
+
+    @Test
+    public void lazyParsesOnFirstAccess() throws SQLException {
+        JsonType type = jsonType(ValuePayload.class, "lazy", "true");
+        ValuePayload payload = new ValuePayload("p", 3);
+        write(type, LazyJson.of(payload), false);
+        LazyJson<?> lazyJson = (LazyJson<?>) read(type, false);
+        assertFalse(lazyJson.isParsed());
+        assertEquals("LazyJson[unparsed]", lazyJson.toString());
+        assertEquals(payload, lazyJson.get());
+        assertTrue(lazyJson.isParsed());
+        assertSame(lazyJson.get(), lazyJson.get());
+    }
+
+    @Test
+    public void lazyWritesUnparsedRawBack() throws SQLException {
+        JsonType type = jsonType(ValuePayload.class, "type", "2004", "lazy", "true", "format", "smile", "compress", "deflate", "compressThreshold", "0");
+        // 以json写入，lazy字段未访问时原样写回，不转换为smile
+        write(jsonType(ValuePayload.class, "type", "2004"), new ValuePayload("p", 3), true);
+        byte[] raw = (byte[]) readRaw(true);
+        LazyJson<?> lazyJson = (LazyJson<?>) read(type, true);
+        write(type, lazyJson, true);
+        assertTrue(Arrays.equals(raw, (byte[]) readRaw(true)));
+        assertFalse(lazyJson.isParsed());
+
+        lazyJson.get();
+        write(type, lazyJson, true);
+        assertEquals(JsonType.DeflateCodec.HEADER, ((byte[]) readRaw(true))[0]);
+        assertEquals(lazyJson.get(), ((LazyJson<?>) read(type, true)).get());
+    }
+
+    @Test
+    public void lazyCopyAndEqualsWithoutParsing() throws SQLException {
+        JsonType type = jsonType(ValuePayload.class, "lazy", "true");
+        write(type, LazyJson.of(new ValuePayload("p", 3)), false);
+        LazyJson<?> loaded = (LazyJson<?>) read(type, false);
+        LazyJson<?> snapshot = (LazyJson<?>) type.deepCopy(loaded);
+        assertNotSame(loaded, snapshot);
+        assertTrue(type.equals(loaded, snapshot));
+        assertFalse(loaded.isParsed());
+        assertFalse(snapshot.isParsed());
+        assertEquals(type.disassemble(loaded), readRaw(false));
+
+        LazyJson<?> assembled = (LazyJson<?>) type.assemble(type.disassemble(loaded), null);
+        assertFalse(assembled.isParsed());
+        assertEquals(loaded.get(), assembled.get());
+
+        ((ValuePayload) loaded.get()).setName("changed");
+        LazyJson<?> copy = (LazyJson<?>) type.deepCopy(loaded);
+        assertTrue(copy.isParsed());
+        assertNotSame(loaded.get(), copy.get());
+        assertFalse(type.equals(loaded, snapshot));
+    }
+
+    @Test
+    public void lazyReturnsLazyJson() {
+        assertEquals(LazyJson.class, jsonType(Payload.class, "lazy", "true").returnedClass());
+        assertEquals(Payload.class, jsonType(Payload.class).returnedClass());
+        jsonType(Payload.class, "lazy", "true", DynamicParameterizedType.RETURNED_CLASS, LazyJson.class.getName());
+    }
+
+    @Test(expected = HibernateException.class)
+    public void lazyRequiresLazyJsonProperty() {
+        jsonType(Payload.class, "lazy", "true", DynamicParameterizedType.RETURNED_CLASS, Payload.class.getName());
+    }
+
+    private static JsonType.Format detect(byte[] bytes) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(bytes), JsonType.Format.HEADER_LENGTH);
+        JsonType.Format format = JsonType.Format.detect(in);
+        byte[] rest = new byte[bytes.length];
+        int length = 0;
+        for (int n; length < rest.length && (n = in.read(rest, length, rest.length - length)) > 0;) {
+            length += n;
+        }
+        // 识别后内容完整放回
+        assertEquals(bytes.length, length);
+        assertTrue(Arrays.equals(bytes, rest));
+        return format;
+    }
+
+    /**
+     * 通过nullSafeSet写入，blob与JsonType的type参数（2004）一致
+     */
+    static void write(JsonType type, Object value, boolean blob) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("delete from json_value");
+        }
+        try (PreparedStatement st = connection.prepareStatement("insert into json_value (" + (blob ? "blob_value" : "text_value") + ") values (?)")) {
+            type.nullSafeSet(st, value, 1, null);
+            st.executeUpdate();
+        }
+    }
+
+    /**
+     * 通过nullSafeGet读取
+     */
+    static Object read(JsonType type, boolean blob) throws SQLException {
+        String column = blob ? "blob_value" : "text_value";
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("select " + column + " from json_value")) {
+            rs.next();
+            return type.nullSafeGet(rs, new String[] { column }, null, null);
+        }
+    }
+
+    /**
+     * 数据库中保存的内容：BLOB字段为byte[]，text字段为String
+     */
+    static Object readRaw(boolean blob) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("select " + (blob ? "blob_value" : "text_value") + " from json_value")) {
+            rs.next();
+            return blob ? rs.getBytes(1) : rs.getString(1);
+        }
+    }
+
+    static JsonType jsonType(Class<?> classType, String... parameters) {
+        Properties params = new Properties();
+        params.setProperty("classType", classType.getName());
+        for (int i = 0; i < parameters.length; i += 2) {
+            params.setProperty(parameters[i], parameters[i + 1]);
+        }
+        JsonType type = new JsonType();
+        type.setParameterValues(params);
+        return type;
+    }
+
+    public static class CopiedPayload extends Payload {
+    }
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME)
+    @JsonSubTypes(@JsonSubTypes.Type(value = Circle.class, name = "circle"))
+    public static class Shape {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Circle extends Shape {
+
+        private int radius;
+
+        public int getRadius() {
+            return radius;
+        }
+
+        public void setRadius(int radius) {
+            this.radius = radius;
+        }
+    }
+
+    public static class DetailPayload extends Payload {
+
+        private String detail;
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public void setDetail(String detail) {
+            this.detail = detail;
+        }
+    }
+
+    static class TestCodec implements JsonType.Codec {
+
+        private final byte header;
+
+        TestCodec(byte header) {
+            this.header = header;
+        }
+
+        @Override
+        public byte header() {
+            return header;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) {
+            return in;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package cn.wuxia.common.hibernate.annotation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 没有重写equals的json值对象
+ */
+public class Payload {
+
+    private String name;
+
+    private List<Integer> items = new ArrayList<>();
+
+    private Map<String, String> attributes = new LinkedHashMap<>();
+
+    public Payload() {
+    }
+
+    public Payload(String name, int itemCount) {
+        this.name = name;
+        for (int i = 0; i < itemCount; i++) {
+            items.add(i);
+            attributes.put("key" + i, "value" + i);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<Integer> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Integer> items) {
+        this.items = items;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(Map<String, String> attributes) {
+        this.attributes = attributes;
+    }
+}
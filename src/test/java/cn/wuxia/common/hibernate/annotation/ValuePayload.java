@@ -0,0 +1,34 @@
+package cn.wuxia.common.hibernate.annotation;
+
+import java.util.Objects;
+
+/**
+ * 重写了equals的json值对象
+ */
+public class ValuePayload extends Payload {
+
+    public ValuePayload() {
+    }
+
+    public ValuePayload(String name, int itemCount) {
+        super(name, itemCount);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValuePayload)) {
+            return false;
+        }
+        ValuePayload that = (ValuePayload) o;
+        return Objects.equals(getName(), that.getName()) && Objects.equals(getItems(), that.getItems())
+                && Objects.equals(getAttributes(), that.getAttributes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getName(), getItems(), getAttributes());
+    }
+}
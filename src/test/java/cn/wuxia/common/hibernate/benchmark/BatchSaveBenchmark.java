@@ -0,0 +1,87 @@
+package cn.wuxia.common.hibernate.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.hibernate.dao.SimpleHibernateDao;
+
+/**
+ * batchSave（jdbc batch）与原来逐条saveOrUpdate、每30条flush一次的写入速度对比，结果为rows/s
+ *
+ * @author songlin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSaveBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private SessionFactory sessionFactory;
+
+    private SimpleHibernateDao<TestOrder, Long> dao;
+
+    private List<TestOrder> orders;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        sessionFactory = H2SessionFactory.build("batch_save_benchmark", TestOrder.class);
+        dao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void newOrders() {
+        orders = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            orders.add(new TestOrder("c" + (i % 20), i, "NEW"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void saveOneByOne() {
+        H2SessionFactory.doInTransaction(sessionFactory, session -> {
+            int i = 0;
+            for (TestOrder order : orders) {
+                session.saveOrUpdate(order);
+                if (++i % SimpleHibernateDao.DEFAULT_BATCH_SIZE == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int[] batchSave() {
+        return H2SessionFactory.inTransaction(sessionFactory, (Session session) -> dao.batchSave(orders, 100));
+    }
+}
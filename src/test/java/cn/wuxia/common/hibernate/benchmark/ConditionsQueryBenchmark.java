@@ -0,0 +1,110 @@
+package cn.wuxia.common.hibernate.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.hibernate.dao.SupportHibernateDao;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Sort;
+
+/**
+ * 列表页查询（5/10个条件及排序）创建Query的耗时：按查询形状编译的hql与每次构建CriteriaQuery的对比，
+ * 不包含数据库执行时间（H2内存库的执行时间远大于两者的差异）
+ *
+ * @author songlin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionsQueryBenchmark {
+
+    @Param({ "5", "10" })
+    private int conditionCount;
+
+    private SessionFactory sessionFactory;
+
+    private Session session;
+
+    private BenchmarkDao compiled;
+
+    private BenchmarkDao criteria;
+
+    private Sort sort;
+
+    private Conditions[] conditions;
+
+    @Setup
+    public void setUp() {
+        sessionFactory = H2SessionFactory.build("conditions_query_benchmark", TestOrder.class);
+        session = sessionFactory.openSession();
+        compiled = new BenchmarkDao(sessionFactory, session);
+        criteria = new BenchmarkDao(sessionFactory, session);
+        criteria.setCompileCriteriaQuery(false);
+        sort = new Sort(Sort.Direction.DESC, "amount").and(new Sort("id"));
+        List<Conditions> all = Arrays.asList(new Conditions("status", MatchType.EQ, "NEW"), new Conditions("amount", MatchType.GTE, 10),
+                new Conditions("amount", MatchType.LT, 90), new Conditions("customer", MatchType.LL, "c"),
+                new Conditions("customer", MatchType.NE, "c7"), new Conditions("customer", MatchType.IN, Arrays.asList("c1", "c2", "c3", "c4")),
+                new Conditions("status", MatchType.INN, null), new Conditions("amount", MatchType.NE, 50),
+                new Conditions("amount", MatchType.BW, 1, 99), new Conditions("customer", MatchType.NIN, Arrays.asList("c9", "c10")));
+        conditions = all.subList(0, conditionCount).toArray(new Conditions[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Query<TestOrder> compiled() {
+        return compiled.createConditionsQuery(sort, conditions);
+    }
+
+    @Benchmark
+    public Query<TestOrder> criteriaQuery() {
+        return criteria.createConditionsQuery(sort, conditions);
+    }
+
+    static class BenchmarkDao extends SupportHibernateDao<TestOrder, Long> {
+
+        private final Session session;
+
+        BenchmarkDao(SessionFactory sessionFactory, Session session) {
+            super(sessionFactory, TestOrder.class);
+            this.session = session;
+        }
+
+        @Override
+        public Session getSession() {
+            return session;
+        }
+
+        @Override
+        protected Query<TestOrder> createConditionsQuery(Sort sort, Conditions[] conditions) {
+            return super.createConditionsQuery(sort, conditions);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cn.wuxia.common.hibernate.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import cn.wuxia.common.hibernate.annotation.JsonType;
+import cn.wuxia.common.hibernate.annotation.Payload;
+
+/**
+ * {@link JsonType}的BLOB编码（json、smile、cbor）的序列化及解析耗时，编码后的字节数在每组参数开始时输出，
+ * mapper的配置与JsonType相同
+ *
+ * @author songlin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonFormatBenchmark {
+
+    @Param({ "json", "smile", "cbor" })
+    private String format;
+
+    @Param({ "10", "200" })
+    private int itemCount;
+
+    private ObjectMapper mapper;
+
+    private Payload payload;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (format) {
+            case "smile":
+                mapper = new ObjectMapper(new SmileFactory());
+                break;
+            case "cbor":
+                CBORFactory factory = new CBORFactory();
+                factory.enable(CBORGenerator.Feature.WRITE_TYPE_HEADER);
+                mapper = new ObjectMapper(factory);
+                break;
+            default:
+                mapper = new ObjectMapper();
+        }
+        payload = new Payload("payload", itemCount);
+        encoded = mapper.writeValueAsBytes(payload);
+        System.out.println(format + " (" + itemCount + " items): " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        return mapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public Payload read() throws IOException {
+        return mapper.readValue(encoded, Payload.class);
+    }
+}
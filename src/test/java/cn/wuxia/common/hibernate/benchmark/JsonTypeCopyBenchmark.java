@@ -0,0 +1,93 @@
+package cn.wuxia.common.hibernate.benchmark;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cn.wuxia.common.hibernate.annotation.JsonType;
+import cn.wuxia.common.hibernate.annotation.Payload;
+import cn.wuxia.common.hibernate.annotation.ValuePayload;
+
+/**
+ * {@link JsonType}的deepCopy及脏检查（equals）的耗时：
+ * TokenBuffer复制与原来的writeValueAsString再readValue的对比，重写了equals的值对象与比较序列化内容的对比
+ *
+ * @author songlin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonTypeCopyBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({ "10", "200" })
+    private int itemCount;
+
+    private JsonType payloadType;
+
+    private JsonType valuePayloadType;
+
+    private Payload payload;
+
+    private Payload payloadCopy;
+
+    private ValuePayload valuePayload;
+
+    private ValuePayload valuePayloadCopy;
+
+    @Setup
+    public void setUp() {
+        payloadType = jsonType(Payload.class);
+        valuePayloadType = jsonType(ValuePayload.class);
+        payload = new Payload("payload", itemCount);
+        payloadCopy = new Payload("payload", itemCount);
+        valuePayload = new ValuePayload("payload", itemCount);
+        valuePayloadCopy = new ValuePayload("payload", itemCount);
+    }
+
+    @Benchmark
+    public Object tokenBufferCopy() {
+        return payloadType.deepCopy(payload);
+    }
+
+    @Benchmark
+    public Object stringCopy() throws IOException {
+        return MAPPER.readValue(MAPPER.writeValueAsString(payload), Payload.class);
+    }
+
+    @Benchmark
+    public boolean serializedEquals() {
+        return payloadType.equals(payload, payloadCopy);
+    }
+
+    @Benchmark
+    public boolean valueEquals() {
+        return valuePayloadType.equals(valuePayload, valuePayloadCopy);
+    }
+
+    private static JsonType jsonType(Class<?> classType) {
+        Properties params = new Properties();
+        params.setProperty("classType", classType.getName());
+        JsonType type = new JsonType();
+        type.setParameterValues(params);
+        return type;
+    }
+}
@@ -0,0 +1,96 @@
+package cn.wuxia.common.hibernate.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.transform.ResultTransformer;
+import org.hibernate.transform.Transformers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cn.wuxia.common.hibernate.dao.RowMapTransformer;
+
+/**
+ * sql查询结果转换为Map：{@link RowMapTransformer}与{@link Transformers#ALIAS_TO_ENTITY_MAP}的对比，
+ * 每次调用转换一个结果集（1000行）并读取每行的所有列。内存分配使用gc profiler查看（gc.alloc.rate.norm为每行分配的字节数）：
+ *
+ * <pre>
+ * java -cp ... org.openjdk.jmh.Main RowMapTransformerBenchmark -prof gc
+ * </pre>
+ *
+ * @author songlin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapTransformerBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Param({ "5", "20" })
+    private int columnCount;
+
+    private String[] aliases;
+
+    private Object[][] rows;
+
+    @Setup
+    public void setUp() {
+        aliases = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            aliases[c] = "column_" + c;
+        }
+        rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            Object[] row = new Object[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                row[c] = c % 3 == 0 ? (Object) Long.valueOf(i) : c % 3 == 1 ? "v" + i : new Timestamp(i);
+            }
+            rows[i] = row;
+        }
+        rows[0][0] = BigDecimal.ONE;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Object> rowMap() {
+        return transform(new RowMapTransformer());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public List<Object> aliasToEntityMap() {
+        return transform(Transformers.ALIAS_TO_ENTITY_MAP);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> transform(ResultTransformer transformer) {
+        List<Object> result = new ArrayList<>(ROWS);
+        for (Object[] row : rows) {
+            // hibernate每行传入新的Object[]
+            Map<String, Object> map = (Map<String, Object>) transformer.transformTuple(row.clone(), aliases);
+            for (String alias : aliases) {
+                map.get(alias);
+            }
+            result.add(map);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class BatchSaveTest {
+
+    private static SessionFactory sessionFactory;
+
+    private SimpleHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("batch_save", TestOrder.class);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Before
+    public void setUp() {
+        dao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            session.createQuery("delete from TestOrder").executeUpdate();
+        });
+    }
+
+    @Test
+    public void batchSaveReturnsEntitiesPerBatch() {
+        int[] rows = inTransaction(sessionFactory, session -> dao.batchSave(orders(25), 10));
+        assertArrayEquals(new int[] { 10, 10, 5 }, rows);
+        assertEquals(25L, (long) inTransaction(sessionFactory, BatchSaveTest::count));
+    }
+
+    @Test
+    public void batchSaveRestoresSessionBatchSize() {
+        doInTransaction(sessionFactory, session -> {
+            session.setJdbcBatchSize(7);
+            dao.batchSave(orders(3), 2);
+            assertEquals(Integer.valueOf(7), session.getJdbcBatchSize());
+        });
+    }
+
+    @Test
+    public void batchSaveUpdatesDetachedEntities() {
+        List<TestOrder> orders = orders(4);
+        doInTransaction(sessionFactory, session -> dao.batchSave(orders, 3));
+        orders.forEach(order -> order.setStatus("PAID"));
+        doInTransaction(sessionFactory, session -> dao.batchSave(orders, 3));
+        assertEquals(4L, (long) inTransaction(sessionFactory,
+                session -> session.createQuery("select count(*) from TestOrder where status = 'PAID'", Long.class).uniqueResult()));
+    }
+
+    static long count(Session session) {
+        return session.createQuery("select count(*) from TestOrder", Long.class).uniqueResult();
+    }
+
+    static List<TestOrder> orders(int size) {
+        List<TestOrder> orders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            orders.add(new TestOrder("c" + (i % 5), i, "NEW"));
+        }
+        return orders;
+    }
+}
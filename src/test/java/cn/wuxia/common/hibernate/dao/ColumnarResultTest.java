@@ -0,0 +1,124 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.hibernate.dao.ColumnarResult.ColumnType;
+
+public class ColumnarResultTest {
+
+    private static final String SQL = "select amount, cast(amount as decimal(10, 0)) as quantity, cast(amount as decimal(10, 2)) / 4 as price,"
+            + " cast(amount as double) / 4 as weight, customer, created from test_order order by id";
+
+    private static SessionFactory sessionFactory;
+
+    private static SupportHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("columnar_result", TestOrder.class);
+        dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 1; i <= 4; i++) {
+                session.save(new TestOrder("c" + i, i, "NEW"));
+            }
+            session.save(new TestOrder(null, null, "NEW"));
+            session.flush();
+            session.createNativeQuery("alter table test_order add column created timestamp").executeUpdate();
+            session.createNativeQuery("update test_order set created = timestamp '2024-01-02 03:04:05' where amount = 1").executeUpdate();
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void decimalWithScaleKeepsBigDecimal() {
+        assertEquals(ColumnType.LONG, ColumnarResult.typeOf(Types.DECIMAL, 18, 0));
+        assertEquals(ColumnType.OBJECT, ColumnarResult.typeOf(Types.DECIMAL, 19, 0));
+        assertEquals(ColumnType.OBJECT, ColumnarResult.typeOf(Types.NUMERIC, 10, 2));
+        assertEquals(ColumnType.OBJECT, ColumnarResult.typeOf(Types.NUMERIC, 0, 0));
+        assertEquals(ColumnType.DOUBLE, ColumnarResult.typeOf(Types.DOUBLE, 17, 0));
+    }
+
+    @Test
+    public void readColumns() {
+        ColumnarResult result = inTransaction(sessionFactory, session -> dao.queryColumnar(SQL));
+        assertEquals(5, result.getRowCount());
+        assertEquals(Arrays.asList(ColumnType.LONG, ColumnType.LONG, ColumnType.OBJECT, ColumnType.DOUBLE, ColumnType.OBJECT, ColumnType.TIMESTAMP),
+                Arrays.asList(types(result)));
+        assertEquals(2L, result.getLong(0, 1));
+        assertEquals(3L, result.getLong(1, 2));
+        assertEquals(new BigDecimal("0.75"), ((BigDecimal) result.getObject(2, 2)).stripTrailingZeros());
+        assertEquals(0.75, result.getDouble(2, 2), 0);
+        assertEquals(0.75, result.getDouble(3, 2), 0);
+        assertEquals("c4", result.getObject(4, 3));
+        assertEquals(Timestamp.valueOf("2024-01-02 03:04:05"), result.getObject(5, 0));
+        assertEquals(result.getObject(5, 0), new Timestamp(result.getLong(5, 0)));
+    }
+
+    @Test
+    public void readNulls() {
+        ColumnarResult result = inTransaction(sessionFactory, session -> dao.queryColumnar(SQL));
+        for (int column = 0; column < result.getColumnCount(); column++) {
+            assertTrue(result.getColumnName(column), result.isNull(column, 4));
+            assertNull(result.getObject(column, 4));
+        }
+        assertEquals(0L, result.getLong(0, 4));
+        assertEquals(0, result.getDouble(2, 4), 0);
+        assertFalse(result.isNull(5, 0));
+        assertTrue(result.isNull(5, 1));
+        assertEquals(4, result.getNulls(5).cardinality());
+    }
+
+    @Test
+    public void readInChunks() {
+        List<ColumnarResult> chunks = new ArrayList<>();
+        doInTransaction(sessionFactory, session -> dao.queryColumnar(SQL, 2, chunks::add));
+        assertEquals(3, chunks.size());
+        assertEquals(2, chunks.get(0).getRowCount());
+        assertEquals(2, chunks.get(1).getRowCount());
+        assertEquals(1, chunks.get(2).getRowCount());
+        assertEquals(3L, chunks.get(1).getLong(0, 0));
+        assertTrue(chunks.get(2).isNull(0, 0));
+        // 每批重新分配数组，前一批的数据不被覆盖
+        assertEquals(1L, chunks.get(0).getLong(0, 0));
+    }
+
+    @Test
+    public void emptyResultConsumedOnce() {
+        List<ColumnarResult> chunks = new ArrayList<>();
+        doInTransaction(sessionFactory, session -> dao.queryColumnar(SQL.replace(" order by", " where amount > ? order by"), 2, chunks::add, 100));
+        assertEquals(1, chunks.size());
+        assertEquals(0, chunks.get(0).getRowCount());
+        assertEquals(6, chunks.get(0).getColumnCount());
+    }
+
+    private static ColumnType[] types(ColumnarResult result) {
+        ColumnType[] types = new ColumnType[result.getColumnCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = result.getColumnType(i);
+        }
+        return types;
+    }
+}
@@ -0,0 +1,176 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Pages;
+import cn.wuxia.common.orm.query.Sort;
+
+public class ConcurrentCountTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static ExecutorService executor;
+
+    private static final AtomicInteger submitted = new AtomicInteger();
+
+    private SupportHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("concurrent_count", TestOrder.class);
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable runnable) {
+                submitted.incrementAndGet();
+            }
+        };
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 12; i++) {
+                session.save(new TestOrder("c" + i, i, "NEW"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        executor.shutdown();
+        sessionFactory.close();
+    }
+
+    @Before
+    public void setUp() {
+        dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        dao.setConcurrentCount(true);
+        dao.setCountExecutor(executor);
+        submitted.set(0);
+    }
+
+    @Test
+    public void countConcurrentlyWithoutTransaction() {
+        try (Session session = sessionFactory.openSession()) {
+            Pages<TestOrder> page = dao.doInSession(session, () -> dao.findPage(page()));
+            assertEquals(12, page.getTotalCount());
+            assertEquals(5, page.getResult().size());
+        }
+        assertEquals(1, submitted.get());
+    }
+
+    @Test
+    public void countSequentiallyInTransaction() {
+        Pages<TestOrder> page = inTransaction(sessionFactory, session -> {
+            session.save(new TestOrder("uncommitted", 100, "NEW"));
+            Pages<TestOrder> result = dao.findPage(page());
+            session.getTransaction().markRollbackOnly();
+            return result;
+        });
+        assertEquals(13, page.getTotalCount());
+        assertEquals(0, submitted.get());
+    }
+
+    @Test
+    public void releasePermitWhenCancelledBeforeStart() {
+        PendingCountDao pendingDao = new PendingCountDao();
+        pendingDao.setConcurrentCount(true);
+        pendingDao.executor = new PendingExecutor();
+        // 超过默认许可数的取消，任务未开始时许可仍需归还
+        int attempts = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        try (Session session = sessionFactory.openSession()) {
+            for (int i = 0; i < attempts; i++) {
+                try {
+                    pendingDao.doInSession(session, () -> pendingDao.countAndFetch(page(), () -> 0L, () -> {
+                        throw new IllegalStateException("fetch failed");
+                    }));
+                    fail();
+                } catch (IllegalStateException e) {
+                    assertEquals("fetch failed", e.getMessage());
+                }
+            }
+            pendingDao.executor = executor;
+            Pages<TestOrder> page = pendingDao.doInSession(session, () -> pendingDao.findPage(page()));
+            assertEquals(12, page.getTotalCount());
+        }
+        assertEquals(1, submitted.get());
+    }
+
+    /**
+     * 使用默认许可、由测试指定执行器的dao
+     */
+    private static class PendingCountDao extends SupportHibernateDao<TestOrder, Long> {
+
+        private ExecutorService executor;
+
+        PendingCountDao() {
+            super(ConcurrentCountTest.sessionFactory, TestOrder.class);
+        }
+
+        @Override
+        public ExecutorService getCountExecutor() {
+            return executor;
+        }
+    }
+
+    /**
+     * 只接收不执行任务的执行器
+     */
+    private static class PendingExecutor extends AbstractExecutorService {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return tasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private static Pages<TestOrder> page() {
+        Pages<TestOrder> page = new Pages<>();
+        page.setPageSize(5);
+        page.setSort(new Sort("amount"));
+        return page;
+    }
+}
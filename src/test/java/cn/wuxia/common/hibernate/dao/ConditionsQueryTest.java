@@ -0,0 +1,74 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Sort;
+
+public class ConditionsQueryTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SupportHibernateDao<TestOrder, Long> compiled;
+
+    private static SupportHibernateDao<TestOrder, Long> criteria;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("conditions_query", TestOrder.class);
+        compiled = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        criteria = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        criteria.setCompileCriteriaQuery(false);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 40; i++) {
+                session.save(new TestOrder("c" + (i % 4), i % 7, i % 3 == 0 ? "PAID" : "NEW"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void criteriaQueryKeepsEveryOrder() {
+        Sort sort = new Sort(Sort.Direction.DESC, "customer").and(new Sort("amount", "id"));
+        assertEquals(3, inTransaction(sessionFactory, session -> criteria.createCriteriaQuery(sort, null).getOrderList().size()).intValue());
+        List<Long> expected = inTransaction(sessionFactory,
+                session -> session.createQuery("select id from TestOrder order by customer desc, amount asc, id asc", Long.class).list());
+        assertEquals(expected, ids(criteria, sort));
+        assertEquals(expected, ids(compiled, sort));
+    }
+
+    @Test
+    public void compiledMatchesCriteria() {
+        Sort sort = new Sort(Sort.Direction.DESC, "amount").and(new Sort("id"));
+        Conditions[] conditions = { new Conditions("status", MatchType.EQ, "NEW"), new Conditions("amount", MatchType.GTE, 2),
+                new Conditions("amount", MatchType.LT, 6), new Conditions("customer", MatchType.IN, Arrays.asList("c1", "c2", "c3")),
+                new Conditions("customer", MatchType.NE, "c3") };
+        List<Long> expected = ids(criteria, sort, conditions);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, ids(compiled, sort, conditions));
+    }
+
+    private static List<Long> ids(SupportHibernateDao<TestOrder, Long> dao, Sort sort, Conditions... conditions) {
+        return inTransaction(sessionFactory, session -> dao.createConditionsQuery(sort, conditions).list()).stream().map(TestOrder::getId)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,166 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Pages;
+
+public class CountCacheTest {
+
+    private static final String HQL = "select count(*) from TestOrder where customer = ?0";
+
+    private CountCache cache;
+
+    private final AtomicLong loads = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        cache = new CountCache(1, TimeUnit.MINUTES, 100);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(cache);
+    }
+
+    @Test
+    public void keyOnValues() {
+        assertEquals(1, get(new Object[] { "c1", new Object[] { 1, 2 } }));
+        assertEquals(1, get(new Object[] { "c1", new Object[] { 1, 2 } }));
+        assertEquals(2, get(new Object[] { "c1", new Object[] { 1, 3 } }));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void keyOnValueEqualityNotToString() {
+        assertEquals(1, get(new Object[] { new SameText(1) }));
+        assertEquals(2, get(new Object[] { new SameText(2) }));
+    }
+
+    @Test
+    public void keyOnConditions() {
+        Conditions in = new Conditions("amount", MatchType.IN, Arrays.asList(1, 2));
+        assertEquals(1, cache.get(TestOrder.class, null, null, Collections.singletonList(in), loader()));
+        Conditions same = new Conditions("amount", MatchType.IN, Arrays.asList(1, 2));
+        assertEquals(1, cache.get(TestOrder.class, null, null, Collections.singletonList(same), loader()));
+        Conditions other = new Conditions("amount", MatchType.NIN, Arrays.asList(1, 2));
+        assertEquals(2, cache.get(TestOrder.class, null, null, Collections.singletonList(other), loader()));
+    }
+
+    @Test
+    public void invalidateImmediatelyOutsideTransaction() {
+        assertEquals(1, get(new Object[] { "c1" }));
+        cache.invalidateAfterCommit(TestOrder.class);
+        assertEquals(2, get(new Object[] { "c1" }));
+    }
+
+    @Test
+    public void invalidateAfterCommit() {
+        assertEquals(1, get(new Object[] { "c1" }));
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateAfterCommit(TestOrder.class);
+        cache.invalidateAfterCommit(TestOrder.class);
+        assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+        // 写入的事务内不使用缓存
+        assertEquals(2, get(new Object[] { "c1" }));
+        assertEquals(3, get(new Object[] { "c1" }));
+        TransactionSynchronization synchronization = TransactionSynchronizationManager.getSynchronizations().get(0);
+        TransactionSynchronizationManager.clearSynchronization();
+        // 其他事务在提交前仍命中旧的缓存
+        assertEquals(1, get(new Object[] { "c1" }));
+        synchronization.afterCommit();
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(4, get(new Object[] { "c1" }));
+    }
+
+    @Test
+    public void keepCacheAfterRollback() {
+        assertEquals(1, get(new Object[] { "c1" }));
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateAfterCommit(TestOrder.class);
+        TransactionSynchronization synchronization = TransactionSynchronizationManager.getSynchronizations().get(0);
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        TransactionSynchronizationManager.clearSynchronization();
+        assertEquals(1, get(new Object[] { "c1" }));
+    }
+
+    @Test
+    public void invalidateAfterQueryUpdate() {
+        SessionFactory sessionFactory = H2SessionFactory.build("count_cache", TestOrder.class);
+        try {
+            doInTransaction(sessionFactory, session -> session.save(new TestOrder("c1", 1, "NEW")));
+            SupportHibernateDao<TestOrder, Long> dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+            dao.setCountCache(cache);
+            assertEquals(1, count(sessionFactory, dao));
+            doInTransaction(sessionFactory, session -> dao.doInSession(session, () -> {
+                dao.queryUpdate("insert into test_order (id, customer, amount, status) values (?, ?, ?, ?)", 1000L, "c2", 2, "NEW");
+                return null;
+            }));
+            assertEquals(2, count(sessionFactory, dao));
+            doInTransaction(sessionFactory, session -> dao.doInSession(session, () -> {
+                dao.queryUpdate("delete from test_order where id = :id", Collections.singletonMap("id", 1000L));
+                return null;
+            }));
+            assertEquals(1, count(sessionFactory, dao));
+        } finally {
+            sessionFactory.close();
+        }
+    }
+
+    private static long count(SessionFactory sessionFactory, SupportHibernateDao<TestOrder, Long> dao) {
+        try (Session session = sessionFactory.openSession()) {
+            return dao.doInSession(session, () -> dao.findPage(new Pages<>())).getTotalCount();
+        }
+    }
+
+    private long get(Object[] values) {
+        return cache.get(TestOrder.class, HQL, values, null, loader());
+    }
+
+    private java.util.function.Supplier<Long> loader() {
+        return loads::incrementAndGet;
+    }
+
+    private static class SameText {
+        private final int value;
+
+        SameText(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SameText && ((SameText) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "same";
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.exception.AppServiceException;
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class CountQueryDeriverTest {
+
+    private static SessionFactory sessionFactory;
+
+    private final CountQueryDeriver deriver = new CountQueryDeriver();
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("count_query_deriver", TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 12; i++) {
+                session.save(new TestOrder(i % 4 == 0 ? null : "c" + (i % 3), i, i % 2 == 0 ? "NEW" : "PAID"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void simpleHql() {
+        assertEquals("select count(*) from TestOrder o where o.amount > ?0", deriver.deriveHql("select o from TestOrder o where o.amount > ?0 order by o.id"));
+        assertEquals("select count(*) from TestOrder o left join o.items", deriver.deriveHql("from TestOrder o left join fetch o.items"));
+    }
+
+    @Test
+    public void simpleSql() {
+        assertEquals("select count(1) as count from test_order where amount > ?", deriver.deriveSql("select id, amount from test_order where amount > ? order by id"));
+        assertEquals("select count(1) as count from (select 1 from test_order group by customer) orgi",
+                deriver.deriveSql("select customer, count(*) from test_order group by customer"));
+    }
+
+    @Test(expected = AppServiceException.class)
+    public void groupByHavingRejected() {
+        deriver.deriveHql("select o.customer, count(o) from TestOrder o group by o.customer having count(o) > 1");
+    }
+
+    @Test
+    public void groupByCountsNullGroup() {
+        assertCount("select o.customer, count(o) from TestOrder o group by o.customer");
+        assertCount("select o.customer, count(o) from TestOrder o where o.status = 'NEW' group by o.customer order by o.customer");
+        assertCount("select o.customer, count(o) from TestOrder o where o.customer is not null group by o.customer");
+        assertCount("select o.customer, count(o) from TestOrder o where o.amount > 100 group by o.customer");
+    }
+
+    @Test
+    public void distinctCountsNull() {
+        assertCount("select distinct o.customer from TestOrder o");
+        assertCount("select distinct o.customer from TestOrder o where o.amount < 0");
+    }
+
+    @Test
+    public void sqlGroupByCountsNullGroup() {
+        String sql = "select customer, count(*) from test_order group by customer";
+        long expected = inTransaction(sessionFactory, session -> (long) session.createNativeQuery(sql).list().size());
+        long actual = inTransaction(sessionFactory, session -> ((Number) session.createNativeQuery(deriver.deriveSql(sql)).uniqueResult()).longValue());
+        assertEquals(4, expected);
+        assertEquals(expected, actual);
+    }
+
+    private void assertCount(String hql) {
+        long expected = inTransaction(sessionFactory, session -> (long) session.createQuery(hql).list().size());
+        long actual = inTransaction(sessionFactory, session -> ((Number) session.createQuery(deriver.deriveHql(hql)).uniqueResult()).longValue());
+        assertEquals(hql, expected, actual);
+    }
+}
@@ -0,0 +1,98 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Pages;
+import cn.wuxia.common.orm.query.Sort;
+
+public class DeferredJoinPagingTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SupportHibernateDao<TestOrder, Long> dao;
+
+    private static SupportHibernateDao<TestOrder, Long> deferredDao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("deferred_join_paging", TestOrder.class);
+        dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        deferredDao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        deferredDao.setDeferredJoinPaging(true);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 23; i++) {
+                session.save(new TestOrder("c" + (i % 3), i % 7, i % 2 == 0 ? "NEW" : "PAID"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void sameAsOffsetPaging() {
+        for (int i = 1; i <= 5; i++) {
+            int pageNo = i;
+            Pages<TestOrder> plain = inTransaction(sessionFactory, session -> dao.findPage(page(pageNo, null)));
+            Pages<TestOrder> deferred = inTransaction(sessionFactory, session -> deferredDao.findPage(page(pageNo, null)));
+            assertEquals(23, deferred.getTotalCount());
+            assertEquals(ids(plain.getResult()), ids(deferred.getResult()));
+        }
+        Pages<TestOrder> last = inTransaction(sessionFactory, session -> deferredDao.findPageByIds(page(5, null)));
+        assertEquals(3, last.getResult().size());
+    }
+
+    @Test
+    public void sameAsOffsetPagingWithConditions() {
+        Conditions paid = new Conditions("status", MatchType.EQ, "PAID");
+        for (int i = 1; i <= 3; i++) {
+            int pageNo = i;
+            Pages<TestOrder> plain = inTransaction(sessionFactory, session -> dao.findPage(page(pageNo, paid)));
+            Pages<TestOrder> deferred = inTransaction(sessionFactory, session -> deferredDao.findPageByIds(page(pageNo, paid)));
+            assertEquals(11, deferred.getTotalCount());
+            assertEquals(ids(plain.getResult()), ids(deferred.getResult()));
+            deferred.getResult().forEach(order -> assertEquals("PAID", order.getStatus()));
+        }
+    }
+
+    @Test
+    public void emptyPage() {
+        Conditions none = new Conditions("status", MatchType.EQ, "CLOSED");
+        Pages<TestOrder> deferred = inTransaction(sessionFactory, session -> deferredDao.findPage(page(1, none)));
+        assertEquals(0, deferred.getTotalCount());
+        assertTrue(deferred.getResult().isEmpty());
+    }
+
+    private static Pages<TestOrder> page(int pageNo, Conditions conditions) {
+        Pages<TestOrder> page = new Pages<>();
+        page.setPageNo(pageNo);
+        page.setPageSize(5);
+        page.setSort(new Sort(Sort.Direction.DESC, "amount").and(new Sort("id")));
+        if (conditions != null) {
+            page.setConditons(Collections.singletonList(conditions));
+        }
+        return page;
+    }
+
+    private static List<Long> ids(List<TestOrder> orders) {
+        return orders.stream().map(TestOrder::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,104 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestAddress;
+import cn.wuxia.common.hibernate.TestCustomer;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.hibernate.TestSoftOrder;
+
+public class DeleteByIdTest {
+
+    private static SessionFactory sessionFactory;
+
+    private SimpleHibernateDao<TestOrder, Long> orderDao;
+
+    private SimpleHibernateDao<TestCustomer, Long> customerDao;
+
+    private SimpleHibernateDao<TestSoftOrder, Long> softOrderDao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("delete_by_id", TestOrder.class, TestCustomer.class, TestAddress.class, TestSoftOrder.class);
+        sessionFactory.getStatistics().setStatisticsEnabled(true);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Before
+    public void setUp() {
+        orderDao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+        customerDao = new SimpleHibernateDao<>(sessionFactory, TestCustomer.class);
+        softOrderDao = new SimpleHibernateDao<>(sessionFactory, TestSoftOrder.class);
+        sessionFactory.getStatistics().clear();
+    }
+
+    @Test
+    public void deleteWithoutLoading() {
+        TestOrder order = new TestOrder("c1", 1, "NEW");
+        doInTransaction(sessionFactory, session -> orderDao.save(order));
+        sessionFactory.getStatistics().clear();
+        doInTransaction(sessionFactory, session -> orderDao.delete(order.getId()));
+        assertEquals(0, sessionFactory.getStatistics().getEntityLoadCount());
+        assertNull(inTransaction(sessionFactory, session -> orderDao.get(order.getId())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteMissingRowFails() {
+        doInTransaction(sessionFactory, session -> orderDao.delete(-1L));
+    }
+
+    @Test
+    public void deleteWithCascadesLoadsEntity() {
+        TestCustomer customer = new TestCustomer("alice");
+        customer.getAddresses().addAll(Arrays.asList(new TestAddress("a"), new TestAddress("b")));
+        doInTransaction(sessionFactory, session -> customerDao.save(customer));
+        doInTransaction(sessionFactory, session -> customerDao.delete(customer.getId()));
+        assertEquals(0L, (long) inTransaction(sessionFactory,
+                session -> session.createQuery("select count(*) from TestAddress", Long.class).uniqueResult()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteMissingEntityWithCascadesFails() {
+        doInTransaction(sessionFactory, session -> customerDao.delete(-1L));
+    }
+
+    @Test
+    public void deleteRunsSqlDelete() {
+        TestSoftOrder first = new TestSoftOrder("c1");
+        TestSoftOrder second = new TestSoftOrder("c2");
+        doInTransaction(sessionFactory, session -> {
+            softOrderDao.save(first);
+            softOrderDao.save(second);
+        });
+        doInTransaction(sessionFactory, session -> softOrderDao.delete(first.getId()));
+        assertEquals(1, inTransaction(sessionFactory, session -> softOrderDao.deleteByIds(Arrays.asList(second.getId()))).intValue());
+        assertNull(inTransaction(sessionFactory, session -> softOrderDao.get(first.getId())));
+        // 软删除只更新deleted，记录仍然存在
+        assertEquals(2L, ((Number) inTransaction(sessionFactory,
+                session -> session.createNativeQuery("select count(*) from test_soft_order where deleted = true").uniqueResult())).longValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteRowHiddenByWhereFails() {
+        TestSoftOrder order = new TestSoftOrder("c1");
+        doInTransaction(sessionFactory, session -> softOrderDao.save(order));
+        doInTransaction(sessionFactory, session -> softOrderDao.delete(order.getId()));
+        doInTransaction(sessionFactory, session -> softOrderDao.delete(order.getId()));
+    }
+}
@@ -0,0 +1,93 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cn.wuxia.common.orm.PageSQLHandler;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Sort;
+
+public class DynamicConditionCacheTest {
+
+    private static final String HQL = "from TestOrder o where o.amount > ?0";
+
+    private final DynamicConditionCache cache = new DynamicConditionCache();
+
+    @Test
+    public void cachedRewriteBindsCurrentValues() {
+        Sort sort = new Sort(Sort.Direction.DESC, "amount");
+        List<Object> first = new ArrayList<>(Arrays.asList(1));
+        DynamicConditionCache.Rewrite miss = cache.rewrite(HQL, conditions("NEW", "c1"), sort, first, query -> " order by o.amount desc");
+
+        List<Object> second = new ArrayList<>(Arrays.asList(2));
+        DynamicConditionCache.Rewrite hit = cache.rewrite(HQL, conditions("PAID", "c2"), sort, second, query -> " order by o.amount desc");
+
+        List<Object> expected = new ArrayList<>(Arrays.asList(2));
+        assertEquals(PageSQLHandler.dualDynamicCondition(HQL, conditions("PAID", "c2"), expected), hit.getQuery());
+        assertEquals(miss.getQuery(), hit.getQuery());
+        assertEquals(expected, second);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void cachedRewriteBindsNamedValues() {
+        String hql = "from TestOrder o where o.amount > :amount";
+        Map<String, Object> first = new HashMap<>();
+        first.put("amount", 1);
+        cache.rewrite(hql, conditions("NEW", "c1"), null, first, query -> "");
+
+        Map<String, Object> second = new HashMap<>();
+        second.put("amount", 2);
+        DynamicConditionCache.Rewrite hit = cache.rewrite(hql, conditions("PAID", "c2"), null, second, query -> "");
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("amount", 2);
+        assertEquals(PageSQLHandler.dualDynamicCondition(hql, conditions("PAID", "c2"), expected), hit.getQuery());
+        assertEquals(expected, second);
+    }
+
+    @Test
+    public void sortDirectionIsPartOfKey() {
+        cache.rewrite(HQL, conditions("NEW", "c1"), new Sort(Sort.Direction.ASC, "amount"), new ArrayList<>(Arrays.asList(1)), query -> " order by o.amount asc");
+        DynamicConditionCache.Rewrite desc = cache.rewrite(HQL, conditions("NEW", "c1"), new Sort(Sort.Direction.DESC, "amount"),
+                new ArrayList<>(Arrays.asList(1)), query -> " order by o.amount desc");
+        assertEquals(2, cache.size());
+        assertEquals(desc.getQuery() + " order by o.amount desc", desc.getPagedQuery());
+    }
+
+    @Test
+    public void equalSortsShareEntry() {
+        DynamicConditionCache.Rewrite first = cache.rewrite(HQL, conditions("NEW", "c1"), new Sort(Sort.Direction.DESC, "amount").and(new Sort("id")),
+                new ArrayList<>(Arrays.asList(1)), query -> " order by o.amount desc, o.id asc");
+        DynamicConditionCache.Rewrite second = cache.rewrite(HQL, conditions("PAID", "c2"), new Sort(Sort.Direction.DESC, "amount").and(new Sort("id")),
+                new ArrayList<>(Arrays.asList(1)), query -> " order by o.amount desc, o.id asc");
+        assertEquals(1, cache.size());
+        assertSame(first.getQuery(), second.getQuery());
+    }
+
+    @Test
+    public void differentShapeIsNotShared() {
+        cache.rewrite(HQL, conditions("NEW", "c1"), null, new ArrayList<>(Arrays.asList(1)), query -> "");
+        List<Object> paramValue = new ArrayList<>(Arrays.asList(1));
+        List<Conditions> conditions = conditions("NEW", null);
+        DynamicConditionCache.Rewrite rewrite = cache.rewrite(HQL, conditions, null, paramValue, query -> "");
+
+        List<Object> expected = new ArrayList<>(Arrays.asList(1));
+        assertEquals(PageSQLHandler.dualDynamicCondition(HQL, conditions("NEW", null), expected), rewrite.getQuery());
+        assertEquals(expected, paramValue);
+        assertEquals(2, cache.size());
+    }
+
+    private static List<Conditions> conditions(String status, String customer) {
+        return Arrays.asList(new Conditions("status", MatchType.EQ, status), new Conditions("customer", MatchType.EQ, customer));
+    }
+}
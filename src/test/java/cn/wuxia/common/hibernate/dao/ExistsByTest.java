@@ -0,0 +1,68 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class ExistsByTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SimpleHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("exists_by", TestOrder.class);
+        sessionFactory.getStatistics().setStatisticsEnabled(true);
+        dao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            session.save(new TestOrder("c1", 1, "NEW"));
+            session.save(new TestOrder("c1", 2, "NEW"));
+            session.save(new TestOrder(null, 3, "PAID"));
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void existsByDoesNotLoadEntities() {
+        sessionFactory.getStatistics().clear();
+        assertTrue(inTransaction(sessionFactory, session -> dao.existsBy("customer", "c1")));
+        assertFalse(inTransaction(sessionFactory, session -> dao.existsBy("customer", "c2")));
+        assertTrue(inTransaction(sessionFactory, session -> dao.existsBy("customer", null)));
+        assertEquals(0, sessionFactory.getStatistics().getEntityLoadCount());
+    }
+
+    @Test
+    public void propertyUnique() {
+        assertTrue(inTransaction(sessionFactory, session -> dao.isPropertyUnique("status", "CLOSED", "NEW")));
+        assertTrue(inTransaction(sessionFactory, session -> dao.isPropertyUnique("status", "NEW", "NEW")));
+        assertFalse(inTransaction(sessionFactory, session -> dao.isPropertyUnique("status", "PAID", "NEW")));
+    }
+
+    @Test
+    public void metadataFromOverriddenSessionFactory() {
+        SimpleHibernateDao<TestOrder, Long> overridden = new SimpleHibernateDao<TestOrder, Long>(null, TestOrder.class) {
+            @Override
+            protected SessionFactory getSessionFactory() {
+                return ExistsByTest.sessionFactory;
+            }
+        };
+        assertEquals("id", overridden.getIdName());
+        assertTrue(overridden.isEntityClass(TestOrder.class));
+        assertFalse(overridden.isEntityClass(String.class));
+    }
+}
@@ -0,0 +1,63 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.H2Dialect;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class FindNotInTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SimpleHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("find_not_in", H2Dialect.class, TestOrder.class);
+        dao = new SimpleHibernateDao<TestOrder, Long>(sessionFactory, TestOrder.class) {
+            @Override
+            protected int getInClauseLimit() {
+                return 3;
+            }
+        };
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 10; i++) {
+                session.save(new TestOrder("c" + i, i, "NEW"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void notInWithinLimit() {
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8, 9), amounts(Arrays.asList(0, 1, 2)));
+    }
+
+    @Test
+    public void notInChunkedOverLimit() {
+        List<Integer> values = new ArrayList<>(Arrays.asList(0, 2, 4, 6, 8, 9, 2));
+        assertEquals(Arrays.asList(1, 3, 5, 7), amounts(values));
+    }
+
+    private List<Integer> amounts(List<Integer> values) {
+        return inTransaction(sessionFactory, session -> dao.findNotIn("amount", values)).stream().map(TestOrder::getAmount).sorted()
+                .collect(Collectors.toList());
+    }
+}
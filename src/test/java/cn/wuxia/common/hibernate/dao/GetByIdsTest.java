@@ -0,0 +1,100 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class GetByIdsTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SimpleHibernateDao<TestOrder, Long> dao;
+
+    private static final List<Long> ids = new ArrayList<>();
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("get_by_ids", TestOrder.class);
+        sessionFactory.getStatistics().setStatisticsEnabled(true);
+        dao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 5; i++) {
+                TestOrder order = new TestOrder("c" + i, i, "NEW");
+                session.save(order);
+                ids.add(order.getId());
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Before
+    public void setUp() {
+        sessionFactory.getStatistics().clear();
+    }
+
+    @Test
+    public void returnInIdOrder() {
+        List<Long> request = Arrays.asList(ids.get(3), ids.get(0), ids.get(4), ids.get(1));
+        assertEquals(Arrays.asList(3, 0, 4, 1), amounts(inTransaction(sessionFactory, session -> dao.get(request))));
+    }
+
+    @Test
+    public void duplicateIdsReturnedOnce() {
+        List<Long> request = Arrays.asList(ids.get(2), ids.get(1), ids.get(2), null, ids.get(1));
+        assertEquals(Arrays.asList(2, 1), amounts(inTransaction(sessionFactory, session -> dao.get(request))));
+    }
+
+    @Test
+    public void missingIds() {
+        List<Long> request = Arrays.asList(ids.get(1), -1L, ids.get(0));
+        assertEquals(Arrays.asList(1, 0), amounts(inTransaction(sessionFactory, session -> dao.get(request))));
+        List<TestOrder> withMissing = inTransaction(sessionFactory, session -> dao.get(request, true));
+        assertEquals(3, withMissing.size());
+        assertNull(withMissing.get(1));
+        assertEquals(Arrays.asList(1, 0), amounts(Arrays.asList(withMissing.get(0), withMissing.get(2))));
+    }
+
+    @Test
+    public void managedEntitiesWithoutSql() {
+        doInTransaction(sessionFactory, session -> {
+            TestOrder first = session.get(TestOrder.class, ids.get(0));
+            TestOrder second = session.get(TestOrder.class, ids.get(1));
+            Statistics statistics = sessionFactory.getStatistics();
+            long statements = statistics.getPrepareStatementCount();
+            List<TestOrder> orders = dao.get(Arrays.asList(ids.get(1), ids.get(0)));
+            assertEquals(statements, statistics.getPrepareStatementCount());
+            assertSame(second, orders.get(0));
+            assertSame(first, orders.get(1));
+            // 未在session中的id合并为一次查询
+            orders = dao.get(Arrays.asList(ids.get(0), ids.get(2), ids.get(3)));
+            assertEquals(statements + 1, statistics.getPrepareStatementCount());
+            assertSame(first, orders.get(0));
+            assertEquals(Arrays.asList(0, 2, 3), amounts(orders));
+        });
+    }
+
+    private static List<Integer> amounts(List<TestOrder> orders) {
+        return orders.stream().map(TestOrder::getAmount).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,163 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.codec.binary.Base64;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.Keyset;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.hibernate.dao.SupportHibernateDao.SeekKey;
+import cn.wuxia.common.orm.query.Pages;
+import cn.wuxia.common.orm.query.Sort;
+
+public class KeysetPagingTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SupportHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("keyset_paging", TestOrder.class);
+        dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 30; i++) {
+                session.save(new TestOrder("c" + (i % 3), i % 10, i % 2 == 0 ? "NEW" : "PAID"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void conditionWrapsExistingWhere() {
+        String hql = dao.appendKeysetCondition("from TestOrder where status = 'NEW' or status = 'PAID'", seekKeys(), Keyset.after(Keyset.encode(5, 7L)),
+                "", value -> "?");
+        assertEquals("from TestOrder where (status = 'NEW' or status = 'PAID') and ((amount > ?) or (amount = ? and id > ?))", hql);
+    }
+
+    @Test
+    public void conditionInsertedBeforeOrderByAndLimit() {
+        String sql = dao.appendKeysetCondition("select * from test_order where amount > 1 order by amount asc limit 10", seekKeys(),
+                Keyset.after(Keyset.encode(5, 7L)), "", value -> "?");
+        assertEquals("select * from test_order where (amount > 1) and ((amount > ?) or (amount = ? and id > ?)) order by amount asc limit 10", sql);
+        assertEquals("select * from test_order e where ((amount > ?) or (amount = ? and id > ?)) order by e.id",
+                dao.appendKeysetCondition("select * from test_order e order by e.id", seekKeys(), Keyset.after(Keyset.encode(5, 7L)), "", value -> "?"));
+    }
+
+    @Test
+    public void orderByReplacesExistingOrderBy() {
+        assertEquals("from TestOrder where amount > 1 order by amount asc, id asc",
+                dao.appendKeysetOrderBy("from TestOrder where amount > 1 order by customer desc", seekKeys(), ""));
+        assertEquals("select * from t order by amount asc, id asc limit 10", dao.appendKeysetOrderBy("select * from t limit 10", seekKeys(), ""));
+    }
+
+    @Test
+    public void pagesThroughOrCondition() {
+        List<Long> expected = inTransaction(sessionFactory,
+                session -> session.createQuery("select id from TestOrder where customer = 'c0' or customer = 'c1' order by amount, id", Long.class).list());
+        List<Long> actual = new ArrayList<>();
+        Keyset keyset = Keyset.first();
+        do {
+            Pages<TestOrder> page = new Pages<>();
+            page.setPageSize(4);
+            page.setAutoCount(false);
+            page.setSort(new Sort("amount"));
+            Keyset current = keyset;
+            inTransaction(sessionFactory,
+                    session -> dao.findPage(page, current, TestOrder.class, "from TestOrder where customer = ?0 or customer = ?1 order by customer", "c0", "c1"));
+            assertTrue(page.getResult().size() <= 4);
+            actual.addAll(page.getResult().stream().map(TestOrder::getId).collect(Collectors.toList()));
+            keyset = Keyset.after(current.getNext());
+            if (!current.hasNext()) {
+                break;
+            }
+        } while (actual.size() < 100);
+        assertEquals(expected, actual);
+        assertFalse(expected.isEmpty());
+    }
+
+    @Test
+    public void rejectMalformedToken() throws IOException {
+        String valid = Keyset.encode(5, 7L);
+        assertInvalid(valid.substring(0, valid.length() - 3));
+        assertInvalid(valid + "AAAA");
+        assertInvalid(token(-1));
+        // BIG_DECIMAL及LOCAL_DATE_TIME的文本不合法
+        assertInvalid(token(1, 8, "1,5"));
+        assertInvalid(token(1, 15, "2024-13-01"));
+        assertInvalid(token(1, 99, ""));
+    }
+
+    @Test
+    public void rejectTokenNotMatchingSort() {
+        assertInvalid(Keyset.after(Keyset.encode(5)), seekKeys());
+        assertInvalid(Keyset.after(Keyset.encode(5, 7L, 9L)), seekKeys());
+        Pages<TestOrder> page = new Pages<>();
+        page.setSort(new Sort("amount"));
+        try {
+            inTransaction(sessionFactory, session -> dao.findPage(page, Keyset.after(Keyset.encode(5, "c1", 7L))));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("keyset token does not match the sort"));
+        }
+    }
+
+    private static void assertInvalid(String token) {
+        try {
+            Keyset.decode(token);
+            fail(token);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("invalid keyset token"));
+        }
+    }
+
+    private static void assertInvalid(Keyset keyset, List<SeekKey> seekKeys) {
+        try {
+            dao.appendKeysetCondition("from TestOrder", seekKeys, keyset, "", value -> "?");
+            fail(keyset.getAfter());
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("keyset token does not match the sort"));
+        }
+    }
+
+    /**
+     * 按Keyset的格式手工编码：值的个数，再依次为类型及文本
+     */
+    private static String token(int size, Object... typeAndText) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(size);
+        for (int i = 0; i < typeAndText.length; i += 2) {
+            out.writeByte((Integer) typeAndText[i]);
+            out.writeUTF((String) typeAndText[i + 1]);
+        }
+        out.flush();
+        return Base64.encodeBase64URLSafeString(bytes.toByteArray());
+    }
+
+    private static List<SeekKey> seekKeys() {
+        return Arrays.asList(new SeekKey("amount", true), new SeekKey("id", true));
+    }
+}
@@ -0,0 +1,82 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.hibernate.TestSoftOrder;
+
+public class LargeInClauseTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SimpleHibernateDao<TestOrder, Long> orderDao;
+
+    private static SimpleHibernateDao<TestSoftOrder, Long> softOrderDao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("large_in_clause", TestOrder.class, TestSoftOrder.class);
+        orderDao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+        softOrderDao = new SimpleHibernateDao<>(sessionFactory, TestSoftOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 10; i++) {
+                TestSoftOrder order = new TestSoftOrder("c" + i);
+                order.setDeleted(i % 3 == 0);
+                session.save(order);
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void temporaryTableOnlyForPlainEntity() {
+        assertTrue(inTransaction(sessionFactory, session -> orderDao.isTemporaryTableSupported("amount")));
+        assertFalse(inTransaction(sessionFactory, session -> softOrderDao.isTemporaryTableSupported("customer")));
+    }
+
+    @Test
+    public void findInOverLimitKeepsWhere() {
+        List<String> values = customers(1500);
+        assertTrue(values.size() > inTransaction(sessionFactory, session -> softOrderDao.getInClauseLimit()));
+        List<String> customers = inTransaction(sessionFactory, session -> softOrderDao.findIn("customer", values)).stream()
+                .map(TestSoftOrder::getCustomer).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList("c1", "c2", "c4", "c5", "c7", "c8"), customers);
+    }
+
+    @Test
+    public void findNotInOverLimitKeepsWhere() {
+        List<String> values = customers(1500);
+        values.remove("c4");
+        values.remove("c6");
+        List<String> customers = inTransaction(sessionFactory, session -> softOrderDao.findNotIn("customer", values)).stream()
+                .map(TestSoftOrder::getCustomer).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList("c4"), customers);
+    }
+
+    private static List<String> customers(int size) {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            values.add("c" + i);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,87 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Conditions;
+import cn.wuxia.common.orm.query.MatchType;
+import cn.wuxia.common.orm.query.Pages;
+import cn.wuxia.common.orm.query.Sort;
+
+public class ProjectionQueryTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SupportHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("projection_query", TestOrder.class);
+        dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 12; i++) {
+                session.save(new TestOrder("c" + (i % 3), i, i % 2 == 0 ? "NEW" : "PAID"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void findProjection() {
+        List<OrderSummary> result = inTransaction(sessionFactory,
+                session -> dao.findProjection(OrderSummary.class, new Sort(Sort.Direction.DESC, "amount"), new Conditions("status", MatchType.EQ, "NEW")));
+        assertEquals(Arrays.asList(10, 8, 6, 4, 2, 0), result.stream().map(OrderSummary::getAmount).collect(Collectors.toList()));
+        assertEquals("c1", result.get(0).getCustomer());
+    }
+
+    @Test
+    public void findPageAs() {
+        Pages<OrderSummary> page = new Pages<>();
+        page.setPageNo(2);
+        page.setPageSize(4);
+        page.setSort(new Sort("amount"));
+        page.setConditons(Arrays.asList(new Conditions("customer", MatchType.NE, "c0")));
+        Pages<OrderSummary> result = inTransaction(sessionFactory, session -> dao.findPageAs(page, OrderSummary.class));
+        assertEquals(8, result.getTotalCount());
+        assertEquals(Arrays.asList(7, 8, 10, 11), result.getResult().stream().map(OrderSummary::getAmount).collect(Collectors.toList()));
+    }
+
+    public static class OrderSummary {
+
+        private String customer;
+
+        private Integer amount;
+
+        public String getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(String customer) {
+            this.customer = customer;
+        }
+
+        public Integer getAmount() {
+            return amount;
+        }
+
+        public void setAmount(Integer amount) {
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.query.internal.NativeQueryImpl;
+import org.hibernate.transform.Transformers;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class RowMapTransformerTest {
+
+    private static final String[] ALIASES = { "id", "customer", "amount" };
+
+    private static SessionFactory sessionFactory;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("row_map_transformer", TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 5; i++) {
+                session.save(new TestOrder("c" + i, i, "NEW"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void sameAsAliasToEntityMap() {
+        String sql = "select id, customer, amount from test_order order by id";
+        List<?> expected = inTransaction(sessionFactory, session -> session.createNativeQuery(sql).unwrap(NativeQueryImpl.class)
+                .setResultTransformer(Transformers.ALIAS_TO_ENTITY_MAP).list());
+        List<?> actual = inTransaction(sessionFactory, session -> session.createNativeQuery(sql).unwrap(NativeQueryImpl.class)
+                .setResultTransformer(new RowMapTransformer()).list());
+        assertEquals(5, actual.size());
+        assertEquals(expected, actual);
+        assertEquals(expected.hashCode(), actual.hashCode());
+    }
+
+    @Test
+    public void rowsShareColumns() {
+        RowMapTransformer transformer = new RowMapTransformer();
+        RowMapTransformer.RowMap first = row(transformer, 1L, "c1", 10);
+        RowMapTransformer.RowMap second = row(transformer, 2L, "c2", 20);
+        assertSame(columnsOf(first), columnsOf(second));
+        assertEquals(Arrays.asList("id", "customer", "amount"), new ArrayList<>(second.keySet()));
+        assertEquals("c2", second.get("customer"));
+    }
+
+    @Test
+    public void duplicateAliasUsesLastColumn() {
+        Map<?, ?> row = (Map<?, ?>) new RowMapTransformer().transformTuple(new Object[] { 1, 2 }, new String[] { "a", "a" });
+        assertEquals(1, row.size());
+        assertEquals(2, row.get("a"));
+    }
+
+    @Test
+    public void putAndRemove() {
+        RowMapTransformer.RowMap row = row(new RowMapTransformer(), 1L, "c1", 10);
+        assertEquals(10, row.put("amount", 11));
+        assertEquals(11, row.get("amount"));
+        assertNull(row.put("extra", "x"));
+        assertEquals(4, row.size());
+        assertEquals("x", row.get("extra"));
+        assertEquals("c1", row.remove("customer"));
+        assertFalse(row.containsKey("customer"));
+        assertEquals(Arrays.asList("id", "amount", "extra"), new ArrayList<>(row.keySet()));
+    }
+
+    @Test
+    public void serializesAsLinkedHashMap() throws Exception {
+        RowMapTransformer.RowMap row = row(new RowMapTransformer(), 1L, "c1", 10);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(row);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Object copy = in.readObject();
+            assertTrue(copy instanceof LinkedHashMap);
+            assertEquals(row, copy);
+        }
+    }
+
+    private static RowMapTransformer.RowMap row(RowMapTransformer transformer, Object... values) {
+        return (RowMapTransformer.RowMap) transformer.transformTuple(values, ALIASES);
+    }
+
+    private static Object columnsOf(RowMapTransformer.RowMap row) {
+        try {
+            java.lang.reflect.Field field = RowMapTransformer.RowMap.class.getDeclaredField("columns");
+            field.setAccessible(true);
+            return field.get(row);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
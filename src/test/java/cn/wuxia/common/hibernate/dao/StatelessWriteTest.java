@@ -0,0 +1,123 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class StatelessWriteTest {
+
+    private static SessionFactory sessionFactory;
+
+    private SimpleHibernateDao<TestOrder, Long> dao;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.buildCached("stateless_write", TestOrder.class);
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Before
+    public void setUp() {
+        dao = new SimpleHibernateDao<>(sessionFactory, TestOrder.class);
+        dao.setBatchSize(10);
+        doInTransaction(sessionFactory, session -> session.createQuery("delete from TestOrder").executeUpdate());
+        sessionFactory.getCache().evictAllRegions();
+    }
+
+    @Test
+    public void insertInBatches() {
+        List<TestOrder> orders = BatchSaveTest.orders(25);
+        assertEquals(25, (int) inTransaction(sessionFactory, session -> dao.statelessInsert(orders)));
+        orders.forEach(order -> assertNotNull(order.getId()));
+        assertEquals(25L, (long) inTransaction(sessionFactory, BatchSaveTest::count));
+    }
+
+    @Test
+    public void insertJoinsCurrentTransaction() {
+        doInTransaction(sessionFactory, session -> {
+            dao.statelessInsert(BatchSaveTest.orders(3));
+            session.getTransaction().markRollbackOnly();
+        });
+        assertEquals(0L, (long) inTransaction(sessionFactory, BatchSaveTest::count));
+    }
+
+    @Test
+    public void updateAndDelete() {
+        List<TestOrder> orders = BatchSaveTest.orders(12);
+        doInTransaction(sessionFactory, session -> dao.statelessInsert(orders));
+        orders.forEach(order -> order.setStatus("PAID"));
+        assertEquals(12, (int) inTransaction(sessionFactory, session -> dao.statelessUpdate(orders)));
+        assertEquals(12L, countByStatus("PAID"));
+        assertEquals(5, (int) inTransaction(sessionFactory, session -> dao.statelessDelete(orders.subList(0, 5))));
+        assertEquals(7L, (long) inTransaction(sessionFactory, BatchSaveTest::count));
+    }
+
+    @Test
+    public void upsertInsertsNewAndUpdatesExisting() {
+        List<TestOrder> existing = BatchSaveTest.orders(8);
+        doInTransaction(sessionFactory, session -> dao.statelessInsert(existing));
+        List<TestOrder> orders = new ArrayList<>(existing.subList(0, 6));
+        orders.forEach(order -> order.setStatus("PAID"));
+        // 带id但数据库中不存在的记录也执行insert
+        TestOrder missing = new TestOrder("missing", 100, "PAID");
+        missing.setId(100000L);
+        orders.add(missing);
+        orders.addAll(BatchSaveTest.orders(5));
+        assertEquals(12, (int) inTransaction(sessionFactory, session -> dao.statelessUpsert(orders)));
+        assertEquals(14L, (long) inTransaction(sessionFactory, BatchSaveTest::count));
+        assertEquals(7L, countByStatus("PAID"));
+        assertEquals(7L, countByStatus("NEW"));
+    }
+
+    @Test
+    public void evictSecondLevelCache() {
+        List<TestOrder> orders = BatchSaveTest.orders(2);
+        doInTransaction(sessionFactory, session -> dao.statelessInsert(orders));
+        Long id = orders.get(0).getId();
+        Cache cache = sessionFactory.getCache();
+        assertFalse(cache.containsEntity(TestOrder.class, id));
+        doInTransaction(sessionFactory, session -> dao.get(id));
+        assertTrue(cache.containsEntity(TestOrder.class, id));
+
+        orders.forEach(order -> order.setStatus("PAID"));
+        doInTransaction(sessionFactory, session -> dao.statelessUpdate(orders));
+        assertFalse(cache.containsEntity(TestOrder.class, id));
+        assertEquals("PAID", inTransaction(sessionFactory, session -> dao.get(id)).getStatus());
+
+        orders.forEach(order -> order.setStatus("CLOSED"));
+        doInTransaction(sessionFactory, session -> dao.statelessUpsert(orders));
+        assertFalse(cache.containsEntity(TestOrder.class, id));
+        assertEquals("CLOSED", inTransaction(sessionFactory, session -> dao.get(id)).getStatus());
+
+        doInTransaction(sessionFactory, session -> dao.statelessDelete(Arrays.asList(orders.get(0))));
+        assertFalse(cache.containsEntity(TestOrder.class, id));
+        assertNull(inTransaction(sessionFactory, session -> dao.get(id)));
+    }
+
+    private static long countByStatus(String status) {
+        return inTransaction(sessionFactory, session -> session.createQuery("select count(*) from TestOrder where status = :status", Long.class)
+                .setParameter("status", status).uniqueResult());
+    }
+}
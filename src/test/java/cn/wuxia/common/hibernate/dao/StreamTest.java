@@ -0,0 +1,75 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Sort;
+
+public class StreamTest {
+
+    private static SessionFactory sessionFactory;
+
+    private static SupportHibernateDao<TestOrder, Long> dao;
+
+    private static final List<Long> ids = new ArrayList<>();
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("stream", TestOrder.class);
+        dao = new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+        dao.setStreamEvictSize(5);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 20; i++) {
+                TestOrder order = new TestOrder("c" + i, i, "NEW");
+                session.save(order);
+                ids.add(order.getId());
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void streamEvictsLoadedEntities() {
+        doInTransaction(sessionFactory, session -> {
+            try (Stream<TestOrder> stream = dao.stream(new Sort("amount"))) {
+                List<TestOrder> orders = stream.collect(Collectors.toList());
+                assertEquals(20, orders.size());
+                assertFalse(session.contains(orders.get(0)));
+                assertTrue(session.contains(orders.get(19)));
+            }
+        });
+    }
+
+    @Test
+    public void streamKeepsEntitiesManagedBeforeOpening() {
+        doInTransaction(sessionFactory, session -> {
+            TestOrder managed = session.get(TestOrder.class, ids.get(0));
+            managed.setStatus("PAID");
+            try (Stream<TestOrder> stream = dao.stream(new Sort("amount"))) {
+                assertEquals(20, stream.count());
+            }
+            assertTrue(session.contains(managed));
+        });
+        doInTransaction(sessionFactory, session -> {
+            assertEquals("PAID", session.get(TestOrder.class, ids.get(0)).getStatus());
+        });
+    }
+}
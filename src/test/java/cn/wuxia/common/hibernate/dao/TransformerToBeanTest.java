@@ -0,0 +1,198 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hibernate.HibernateException;
+import org.hibernate.PropertyNotFoundException;
+import org.hibernate.SessionFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.TestOrder;
+
+public class TransformerToBeanTest {
+
+    private static SessionFactory sessionFactory;
+
+    @BeforeClass
+    public static void init() {
+        sessionFactory = H2SessionFactory.build("transformer_to_bean", TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 5; i++) {
+                session.save(new TestOrder("c" + i, i * 10, i % 2 == 0 ? "NEW" : "PAID"));
+            }
+        });
+    }
+
+    @AfterClass
+    public static void destroy() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void matchesAliasesIgnoringCaseAndUnderscore() {
+        TransformerToBean transformer = new TransformerToBean(OrderView.class);
+        OrderView view = (OrderView) transformer.transformTuple(new Object[] { BigInteger.valueOf(7), "c1", new BigDecimal("12"), 1, "PAID" },
+                new String[] { "ID", "customer_name", "AMOUNT", "paid", "status" });
+        assertEquals(Long.valueOf(7), view.getId());
+        assertEquals("c1", view.getCustomerName());
+        assertEquals(12, view.getAmount());
+        assertTrue(view.isPaid());
+        assertEquals(Status.PAID, view.getStatus());
+    }
+
+    @Test
+    public void nullValueKeepsPrimitiveDefault() {
+        OrderView view = (OrderView) new TransformerToBean(OrderView.class).transformTuple(new Object[] { null, null }, new String[] { "amount", "paid" });
+        assertEquals(0, view.getAmount());
+        assertFalse(view.isPaid());
+    }
+
+    @Test(expected = PropertyNotFoundException.class)
+    public void unknownAliasFails() {
+        new TransformerToBean(OrderView.class).transformTuple(new Object[] { 1L, "x" }, new String[] { "id", "unknown" });
+    }
+
+    @Test
+    public void conversionFailureNamesAlias() {
+        try {
+            new TransformerToBean(OrderView.class).transformTuple(new Object[] { 1L, "12x" }, new String[] { "id", "AMOUNT" });
+            fail();
+        } catch (HibernateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[AMOUNT]"));
+            assertTrue(e.getCause() instanceof NumberFormatException);
+        }
+    }
+
+    @Test
+    public void privateClassAndFields() {
+        PrivateView view = (PrivateView) new TransformerToBean(PrivateView.class).transformTuple(new Object[] { "c1", 3L },
+                new String[] { "customer", "amount" });
+        assertEquals("c1", view.customer);
+        assertEquals(3, view.amount);
+    }
+
+    @Test
+    public void nativeQuery() {
+        List<?> views = inTransaction(sessionFactory, session -> session
+                .createNativeQuery("select id, customer as customer_name, amount, status from test_order order by id")
+                .unwrap(org.hibernate.query.internal.NativeQueryImpl.class).setResultTransformer(new TransformerToBean(OrderView.class)).list());
+        assertEquals(5, views.size());
+        OrderView last = (OrderView) views.get(4);
+        assertEquals("c4", last.getCustomerName());
+        assertEquals(40, last.getAmount());
+        assertEquals(Status.NEW, last.getStatus());
+    }
+
+    /**
+     * 同一组别名的转换缓存被多个线程共用，交替传入不同类型的值
+     */
+    @Test
+    public void concurrentConversionsOfDifferentValueTypes() throws Exception {
+        String[] aliases = { "amount" };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final Object value = t % 2 == 0 ? (Object) Long.valueOf(5) : "5";
+                futures.add(executor.submit(() -> {
+                    TransformerToBean transformer = new TransformerToBean(OrderView.class);
+                    for (int i = 0; i < 20000; i++) {
+                        if (((OrderView) transformer.transformTuple(new Object[] { value }, aliases)).getAmount() != 5) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class PrivateView {
+
+        private String customer;
+
+        private int amount;
+
+        public void setAmount(int amount) {
+            this.amount = amount;
+        }
+    }
+
+    public enum Status {
+        NEW, PAID
+    }
+
+    public static class OrderView {
+
+        private Long id;
+
+        private String customerName;
+
+        private int amount;
+
+        private boolean paid;
+
+        private Status status;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getCustomerName() {
+            return customerName;
+        }
+
+        public void setCustomerName(String customerName) {
+            this.customerName = customerName;
+        }
+
+        public int getAmount() {
+            return amount;
+        }
+
+        public void setAmount(int amount) {
+            this.amount = amount;
+        }
+
+        public boolean isPaid() {
+            return paid;
+        }
+
+        public void setPaid(boolean paid) {
+            this.paid = paid;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(Status status) {
+            this.status = status;
+        }
+    }
+}
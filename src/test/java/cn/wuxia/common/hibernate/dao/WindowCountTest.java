@@ -0,0 +1,129 @@
+package cn.wuxia.common.hibernate.dao;
+
+import static cn.wuxia.common.hibernate.H2SessionFactory.doInTransaction;
+import static cn.wuxia.common.hibernate.H2SessionFactory.inTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.Dialect;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import cn.wuxia.common.hibernate.EnhancementDialect;
+import cn.wuxia.common.hibernate.EnhancementMySQL8Dialect;
+import cn.wuxia.common.hibernate.H2SessionFactory;
+import cn.wuxia.common.hibernate.Keyset;
+import cn.wuxia.common.hibernate.TestOrder;
+import cn.wuxia.common.orm.query.Pages;
+
+/**
+ * H2 MySQL模式下验证：{@link EnhancementMySQL8Dialect}在分页语句中用 count(*) over() 返回总数，
+ * {@link EnhancementDialect}（MySQL 5.x）执行独立的count查询
+ */
+public class WindowCountTest {
+
+    private static final String HQL = "from TestOrder o where o.amount >= ?0 order by o.amount, o.id";
+
+    private static final String SQL = "select * from test_order where amount >= ? order by amount, id";
+
+    private static SessionFactory mysql5;
+
+    private static SessionFactory mysql8;
+
+    @BeforeClass
+    public static void init() {
+        mysql5 = build("window_count_mysql5", EnhancementDialect.class);
+        mysql8 = build("window_count_mysql8", EnhancementMySQL8Dialect.class);
+    }
+
+    private static SessionFactory build(String name, Class<? extends Dialect> dialect) {
+        SessionFactory sessionFactory = H2SessionFactory.build(name, dialect, TestOrder.class);
+        doInTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 20; i++) {
+                session.save(new TestOrder("c" + i, i, "NEW"));
+            }
+        });
+        sessionFactory.getStatistics().setStatisticsEnabled(true);
+        return sessionFactory;
+    }
+
+    @AfterClass
+    public static void destroy() {
+        mysql5.close();
+        mysql8.close();
+    }
+
+    @Test
+    public void windowFunctionDependsOnDialect() {
+        Pages<TestOrder> page = page(2);
+        assertFalse(dao(mysql5).isWindowCountSupported(page, null));
+        assertTrue(dao(mysql8).isWindowCountSupported(page, null));
+        assertFalse(dao(mysql8).isWindowCountSupported(page, Keyset.first()));
+    }
+
+    @Test
+    public void hqlPageWithWindowCount() {
+        assertHqlPage(mysql8, 1);
+    }
+
+    @Test
+    public void hqlPageWithCountQuery() {
+        assertHqlPage(mysql5, 2);
+    }
+
+    @Test
+    public void sqlPageWithWindowCount() {
+        assertSqlPage(mysql8, 1);
+    }
+
+    @Test
+    public void sqlPageWithCountQuery() {
+        assertSqlPage(mysql5, 2);
+    }
+
+    @Test
+    public void pageBeyondLastCountsSeparately() {
+        for (SessionFactory sessionFactory : new SessionFactory[] { mysql5, mysql8 }) {
+            Pages<TestOrder> page = page(10);
+            inTransaction(sessionFactory, session -> dao(sessionFactory).findPage(page, TestOrder.class, HQL, 5));
+            assertEquals(15, page.getTotalCount());
+            assertTrue(page.getResult().isEmpty());
+        }
+    }
+
+    private void assertHqlPage(SessionFactory sessionFactory, long queries) {
+        Pages<TestOrder> page = page(2);
+        sessionFactory.getStatistics().clear();
+        inTransaction(sessionFactory, session -> dao(sessionFactory).findPage(page, TestOrder.class, HQL, 5));
+        assertEquals(queries, sessionFactory.getStatistics().getQueryExecutionCount());
+        assertEquals(15, page.getTotalCount());
+        assertEquals(4, page.getResult().size());
+        assertEquals(Integer.valueOf(9), page.getResult().get(0).getAmount());
+    }
+
+    private void assertSqlPage(SessionFactory sessionFactory, long queries) {
+        Pages<Map<String, Object>> page = page(2);
+        sessionFactory.getStatistics().clear();
+        inTransaction(sessionFactory, session -> dao(sessionFactory).findPageBySql(page, SQL, 5));
+        assertEquals(queries, sessionFactory.getStatistics().getQueryExecutionCount());
+        assertEquals(15, page.getTotalCount());
+        assertEquals(4, page.getResult().size());
+        assertEquals(9, ((Number) page.getResult().get(0).get("AMOUNT")).intValue());
+    }
+
+    private static SupportHibernateDao<TestOrder, Long> dao(SessionFactory sessionFactory) {
+        return new SupportHibernateDao<>(sessionFactory, TestOrder.class);
+    }
+
+    private static <X> Pages<X> page(int pageNo) {
+        Pages<X> page = new Pages<>();
+        page.setPageNo(pageNo);
+        page.setPageSize(4);
+        return page;
+    }
+}